@@ -27,7 +27,11 @@ import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -35,36 +39,39 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.Predicate;
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.eclipse.egit.github.core.CommitUser;
 import org.eclipse.egit.github.core.Contributor;
 import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.RepositoryId;
 import org.eclipse.egit.github.core.RepositoryCommit;
 import org.eclipse.egit.github.core.User;
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.PageIterator;
 import org.eclipse.egit.github.core.client.RequestException;
 import org.eclipse.egit.github.core.service.CommitService;
+import org.eclipse.egit.github.core.service.PullRequestService;
 import org.eclipse.egit.github.core.service.RepositoryService;
 import org.eclipse.egit.github.core.service.TeamService;
 import org.eclipse.egit.github.core.service.UserService;
+import org.nuxeo.github.jfr.AnalyzerPhaseEvent;
 
-import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 
-import com.google.gson.JsonSyntaxException;
-
 public class Analyzer {
 
-    private static final String[] CSV_HEADER = new String[] { "Login", "Name",
-            "Signed", "Emails", "Company", "URL", "Aliases", "Commits",
-            "Trivial commits" };
-
     private final class NuxeoEmailPredicate implements Predicate<String> {
         @Override
         public boolean evaluate(String email) {
@@ -79,6 +86,11 @@ public class Analyzer {
      */
     private static final int DEVELOPERS_TEAM_ID = 35421;
 
+    /**
+     * Status returned when listing the commits of an empty repository
+     */
+    private static final int HTTP_EMPTY_REPOSITORY = 409;
+
     private static final List<String> EXCLUDES = Collections.unmodifiableList(Arrays.asList(
             "jboss-seam", "jodconverter.bak", "richfaces", "daisydiff",
             "h2database", "Nuxeo-World-App", "Nuxeo-Feedback"));
@@ -89,10 +101,12 @@ public class Analyzer {
 
     private RepositoryService repoService;
 
-    private UserService userService;
+    private UserResolver userResolver;
 
     private TeamService teamService;
 
+    private PullRequestService pullRequestService;
+
     private boolean exhaustive = false;
 
     private Map<String, Developer> developersByLogin = new TreeMap<>();
@@ -101,19 +115,85 @@ public class Analyzer {
 
     private Map<String, User> nxDevelopersByLogin = new TreeMap<>();
 
-    private Map<Long, List<RepositoryCommit>> commitsByRepository = new HashMap<>();
+    private CommitCache commitsByRepository = new CommitCache();
 
     private Map<String, Developer> allDevelopersByName = new TreeMap<>();
 
+    /**
+     * Commits already attributed, shared across repositories
+     */
+    private ShaSet seenCommits = new ShaSet();
+
+    private CommitAggregator commitAggregator = new CommitAggregator();
+
+    /**
+     * True from the load of the previous state until the results are saved
+     */
+    private boolean unsaved = false;
+
+    /**
+     * End of the last open circuit met by a re-queued repository
+     */
+    private long deferredUntil = 0;
+
     private Path output;
 
     private Path input;
 
+    private Path changes;
+
+    private ChangeSet changeSet = new ChangeSet();
+
+    private Path stats;
+
+    private ContributionStats contributionStats = new ContributionStats();
+
+    private RepositoryId pullRequestRepository;
+
+    private int pullRequestNumber;
+
+    private final GitHubClient client;
+
+    private final PageFetcher pageFetcher;
+
+    private boolean dryRun = false;
+
+    private int concurrency = UserResolver.DEFAULT_CONCURRENCY;
+
+    private boolean failFast = false;
+
+    /**
+     * Developers already checked in fail-fast mode: logins, and names
+     * prefixed with "name:"
+     */
+    private Set<String> checkedDevelopers = new HashSet<>();
+
+    /**
+     * Logins found in the repositories analyzed so far
+     */
+    private Set<String> foundDevelopers = new HashSet<>();
+
     public Analyzer(GitHubClient client) {
-        repoService = new RepositoryService(client);
-        commitService = new CommitService(client);
-        userService = new UserService(client);
+        this.client = client;
+        pageFetcher = new PageFetcher(client);
+        // Fetch listings pages concurrently
+        repoService = new RepositoryService(client) {
+            @Override
+            protected <V> List<V> getAll(PageIterator<V> iterator)
+                    throws IOException {
+                return pageFetcher.getAll(iterator);
+            }
+        };
+        commitService = new CommitService(client) {
+            @Override
+            protected <V> List<V> getAll(PageIterator<V> iterator)
+                    throws IOException {
+                return pageFetcher.getAll(iterator);
+            }
+        };
+        userResolver = new UserResolver(new UserService(client));
         teamService = new TeamService(client);
+        pullRequestService = new PullRequestService(client);
     }
 
     /**
@@ -123,6 +203,74 @@ public class Analyzer {
         this.exhaustive = exhaustive;
     }
 
+    /**
+     * @param concurrency maximum number of simultaneous GitHub requests
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        userResolver.setConcurrency(concurrency);
+        pageFetcher.setWindow(concurrency);
+    }
+
+    /**
+     * @param budget heap budget in bytes for the commits cache, beyond which
+     *            commits are spilled to disk; unbounded if lower than 1
+     */
+    public void setMemoryBudget(long budget) {
+        commitsByRepository.setBudget(budget);
+    }
+
+    /**
+     * The most recently pushed repositories are analyzed first when the
+     * client has a request budget
+     *
+     * @see ResilientGitHubClient#setMaxRequests(long)
+     */
+    private boolean hasRequestBudget() {
+        return client instanceof ResilientGitHubClient
+                && ((ResilientGitHubClient) client).getMaxRequests() > 0;
+    }
+
+    /**
+     * @param failFast if true, the repositories likely to have new external
+     *            contributions are analyzed first, and the analysis stops at
+     *            the first confirmed unsigned contributor. Ignored in
+     *            exhaustive mode, where commits signed off by their author
+     *            are only known once the commits are analyzed: the command
+     *            line rejects both options.
+     * @see #findConfirmedUnsigned()
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * @param dryRun if true, only estimate the cost of the analysis
+     * @see #printPlan()
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * Log the estimated number of GitHub requests for the analysis of the
+     * selected repositories, and the remaining rate limit.
+     *
+     * @return the estimated number of requests
+     * @throws IOException
+     * @see CostEstimator
+     */
+    public long printPlan() throws IOException {
+        long requests = new CostEstimator(client).printPlan(repositories,
+                exhaustive);
+        saveResponseCache();
+        return requests;
+    }
+
     /**
      * Get all Nuxeo repositories. Excludes:<br/>
      * <ul>
@@ -145,6 +293,40 @@ public class Analyzer {
         }
     }
 
+    /**
+     * Get the given repositories, requested concurrently. The analysis order
+     * is kept.
+     *
+     * @param repos Nuxeo repositories names, or "owner/repo"
+     * @throws IOException
+     */
+    public void setRepositories(List<String> repos) throws IOException {
+        ExecutorService executor = newExecutor(
+                Math.max(1, Math.min(concurrency, repos.size())));
+        try {
+            List<Future<Repository>> futures = new ArrayList<>();
+            for (final String repo : repos) {
+                futures.add(executor.submit(new Callable<Repository>() {
+                    @Override
+                    public Repository call() throws IOException {
+                        if (!repo.contains("/")) {
+                            return repoService.getRepository("nuxeo", repo);
+                        }
+                        String[] split = repo.split("/");
+                        return repoService.getRepository(split[0], split[1]);
+                    }
+                }));
+            }
+            for (Future<Repository> future : futures) {
+                Repository repository = join(future);
+                log.info("Add for analysis: " + repository.getHtmlUrl());
+                repositories.add(repository);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * @throws IOException
      */
@@ -163,27 +345,524 @@ public class Analyzer {
         repositories.add(repository);
     }
 
+    /**
+     * Restrict the analysis to a single pull-request
+     *
+     * @see #checkPullRequest()
+     */
+    public void setPullRequest(String owner, String repo, int number) {
+        pullRequestRepository = RepositoryId.create(owner, repo);
+        pullRequestNumber = number;
+    }
+
+    public boolean isPullRequestCheck() {
+        return pullRequestRepository != null;
+    }
+
+    /**
+     * Check the commit authors of the pull-request set with
+     * {@link #setPullRequest(String, String, int)} against the Nuxeo
+     * developers team and the contributors from the input file, without
+     * crawling the repositories nor updating the output file.
+     *
+     * @return true if there are unsigned contributors
+     * @throws IOException
+     */
+    public boolean checkPullRequest() throws IOException {
+        if (input == null) {
+            input = Paths.get(System.getProperty("java.io.tmpdir"),
+                    "contributors.csv");
+        }
+        ExecutorService bootstrap = newExecutor(1);
+        Future<Void> nxDevelopers = submitNuxeoDevelopers(bootstrap);
+        bootstrap.shutdown();
+        ContributorIndex index;
+        if (Files.isReadable(input)) {
+            index = ContributorIndex.load(input);
+        } else {
+            log.warn("Missing contributors file: " + input);
+            index = new ContributorIndex(Collections.<Developer> emptyList());
+        }
+        join(nxDevelopers);
+        String pullRequest = pullRequestRepository.generateId() + "#"
+                + pullRequestNumber;
+        Set<String> unsignedAuthors = new TreeSet<>();
+        for (RepositoryCommit commit : pullRequestService.getCommits(
+                pullRequestRepository, pullRequestNumber)) {
+            if (SignOffScanner.isSignedOffBy(commit.getCommit().getMessage(),
+                    commit.getCommit().getAuthor())) {
+                continue;
+            }
+            String author = getUnsignedAuthor(index, commit.getAuthor(),
+                    commit.getCommit().getAuthor());
+            if (author != null) {
+                unsignedAuthors.add(author);
+            }
+        }
+        for (String author : unsignedAuthors) {
+            log.info(String.format("Unsigned contributor on %s: %s",
+                    pullRequest, author));
+        }
+        if (unsignedAuthors.isEmpty()) {
+            log.info("No unsigned contributor on " + pullRequest);
+        }
+        saveResponseCache();
+        return !unsignedAuthors.isEmpty();
+    }
+
+    /**
+     * @return a description of the author if unknown or unsigned, null
+     *         otherwise
+     */
+    protected String getUnsignedAuthor(ContributorIndex index, User user,
+            CommitUser commitUser) {
+        List<Developer> candidates = new ArrayList<>();
+        String author;
+        if (user != null && user.getLogin() != null) {
+            if (nxDevelopersByLogin.containsKey(user.getLogin())) {
+                return null;
+            }
+            Developer dev = index.getByLogin(user.getLogin());
+            if (dev != null) {
+                candidates.add(dev);
+            }
+            author = user.getLogin();
+        } else if (commitUser != null) {
+            candidates.addAll(index.getByEmail(commitUser.getEmail()));
+            candidates.addAll(index.getByName(commitUser.getName()));
+            author = commitUser.getName() + " <" + commitUser.getEmail() + ">";
+        } else {
+            return null;
+        }
+        for (Developer dev : candidates) {
+            if (!dev.isUnsigned()) {
+                return null;
+            }
+        }
+        return author;
+    }
+
     /**
      * @return true if there are unsigned contributors
      * @throws IOException
      */
     public boolean analyzeAndPrint() throws IOException {
+        try {
+            return analyze();
+        } catch (IOException | RuntimeException e) {
+            if (unsaved) {
+                // Keep the partial results, as when the budget is exceeded
+                log.error("Analysis aborted, saving partial results: "
+                        + e.getMessage());
+                saveAndPrint();
+                unsaved = false;
+            }
+            throw e;
+        } finally {
+            // Delete the spilled commits, even on failure
+            commitsByRepository.close();
+        }
+    }
+
+    private boolean analyze() throws IOException {
+        unsaved = false;
+        // Load the previous state while the Nuxeo developers are requested
+        ExecutorService bootstrap = newExecutor(1);
+        Future<Void> nxDevelopers = submitNuxeoDevelopers(bootstrap);
+        bootstrap.shutdown();
+        AnalyzerPhaseEvent phase = AnalyzerPhaseEvent.start("load", null);
         load();
-        setNuxeoDevelopers();
+        phase.commit();
+        join(nxDevelopers);
+        unsaved = true;
+        // Sign-offs are unknown until the commits are analyzed
+        boolean gate = failFast && !exhaustive;
+        if (gate) {
+            sortByGatePriority();
+            Developer unsigned = findConfirmedUnsigned();
+            if (unsigned != null) {
+                return stopOnUnsigned(unsigned, null, 0);
+            }
+        } else if (hasRequestBudget()) {
+            sortByPushDate(repositories);
+        }
         // printContributors();
-        for (Repository repo : repositories) {
-            getContributors(repo);
+        List<Repository> failures = new ArrayList<>();
+        List<Repository> requeued = new ArrayList<>();
+        List<Repository> done = new ArrayList<>();
+        boolean budgetExceeded = false;
+        try {
+            for (Repository repo : repositories) {
+                phase = AnalyzerPhaseEvent.start("getContributors",
+                        repo.getName());
+                try {
+                    getContributors(repo);
+                    done.add(repo);
+                } catch (RequestBudgetExceededException e) {
+                    throw e;
+                } catch (IOException e) {
+                    requeue(requeued, repo, e);
+                    continue;
+                } finally {
+                    phase.commit();
+                }
+                Developer unsigned = gate ? findConfirmedUnsigned() : null;
+                if (unsigned != null) {
+                    return stopOnUnsigned(unsigned, repo, done.size());
+                }
+            }
+            awaitDeferred();
+            for (Repository repo : requeued) {
+                phase = AnalyzerPhaseEvent.start("getContributors",
+                        repo.getName());
+                try {
+                    getContributors(repo);
+                    done.add(repo);
+                } catch (RequestBudgetExceededException e) {
+                    throw e;
+                } catch (IOException e) {
+                    fail(failures, repo, e);
+                    continue;
+                } finally {
+                    phase.commit();
+                }
+                Developer unsigned = gate ? findConfirmedUnsigned() : null;
+                if (unsigned != null) {
+                    return stopOnUnsigned(unsigned, repo, done.size());
+                }
+            }
+        } catch (RequestBudgetExceededException e) {
+            budgetExceeded = true;
+            skipped(done, e);
         }
+        phase = AnalyzerPhaseEvent.start("fillAndSyncDevMaps", null);
         fillAndSyncDevMaps();
-        if (exhaustive) {
+        phase.commit();
+        if (exhaustive && !budgetExceeded) {
             // printCommitters();
-            for (Repository repo : repositories) {
-                getCommitters(repo);
+            requeued.clear();
+            done.clear();
+            try {
+                for (Repository repo : repositories) {
+                    try {
+                        getRepositoryCommits(repo);
+                        done.add(repo);
+                    } catch (RequestBudgetExceededException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        requeue(requeued, repo, e);
+                    }
+                }
+                awaitDeferred();
+                for (Repository repo : requeued) {
+                    try {
+                        getRepositoryCommits(repo);
+                        done.add(repo);
+                    } catch (RequestBudgetExceededException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        fail(failures, repo, e);
+                    }
+                }
+            } catch (RequestBudgetExceededException e) {
+                skipped(done, e);
+            }
+            // Fetched commits are cached: aggregate them in a stable order,
+            // a batch at a time to stay within the memory budget
+            sortByUrl(done);
+            int batch = commitAggregator.getParallelism();
+            List<ForkJoinTask<CommitAggregator.Partial>> tasks = new ArrayList<>();
+            for (Repository repo : done) {
+                tasks.add(submitCommitters(repo));
+                if (tasks.size() >= batch) {
+                    addCommitters(CommitAggregator.join(tasks));
+                    tasks.clear();
+                }
             }
+            addCommitters(CommitAggregator.join(tasks));
+            phase = AnalyzerPhaseEvent.start("fillAndSyncDevMaps", null);
             fillAndSyncDevMaps();
+            phase.commit();
         }
         // Need to also parse closed pull-requests?
-        return saveAndPrint();
+        phase = AnalyzerPhaseEvent.start("saveAndPrint", null);
+        boolean unsigned = saveAndPrint();
+        phase.commit();
+        unsaved = false;
+        saveResponseCache();
+        if (!failures.isEmpty()) {
+            throw new IOException("Incomplete analysis, failed repositories: "
+                    + failures);
+        }
+        return unsigned;
+    }
+
+    private Future<Void> submitNuxeoDevelopers(ExecutorService executor) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                AnalyzerPhaseEvent phase = AnalyzerPhaseEvent.start(
+                        "setNuxeoDevelopers", null);
+                setNuxeoDevelopers();
+                phase.commit();
+                return null;
+            }
+        });
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "github-bootstrap");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Keep the bootstrap responses for the next execution
+     *
+     * @see ResilientGitHubClient#setResponseCache(ResponseCache)
+     */
+    private void saveResponseCache() {
+        if (!(client instanceof ResilientGitHubClient)) {
+            return;
+        }
+        ResponseCache cache = ((ResilientGitHubClient) client).getResponseCache();
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                log.error("Failed to save the cache: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Order the repositories for the fail-fast mode: the score of a
+     * repository is its number of external contributors in the previous
+     * state plus one, divided by the number of days since its last push plus
+     * one. Never pushed repositories are last.
+     */
+    private void sortByGatePriority() {
+        Map<String, Integer> externals = new HashMap<>();
+        List<Developer> previous = new ArrayList<>(developersByLogin.values());
+        previous.addAll(developersByName.values());
+        for (Developer dev : previous) {
+            if (!isExternal(dev)) {
+                continue;
+            }
+            Set<String> urls = new HashSet<>();
+            for (String url : dev.getCommits()) {
+                // Repository or commit HTML URL
+                urls.add(StringUtils.substringBefore(url, "/commit/"));
+            }
+            for (String url : urls) {
+                Integer count = externals.get(url);
+                externals.put(url, count == null ? 1 : count + 1);
+            }
+        }
+        long now = System.currentTimeMillis();
+        final Map<Repository, Double> scores = new IdentityHashMap<>();
+        for (Repository repo : repositories) {
+            Integer count = externals.get(repo.getHtmlUrl());
+            Date pushedAt = repo.getPushedAt();
+            scores.put(repo, pushedAt == null ? 0
+                    : (1.0 + (count == null ? 0 : count))
+                            / (1 + Math.max(0, now - pushedAt.getTime()) / 86400000.0));
+        }
+        Collections.sort(repositories, new Comparator<Repository>() {
+            @Override
+            public int compare(Repository r1, Repository r2) {
+                return Double.compare(scores.get(r2), scores.get(r1));
+            }
+        });
+    }
+
+    /**
+     * Check the developers found since the previous call, as
+     * {@link #saveAndPrint()} would, against the developers known so far.
+     * Incomplete developers are completed with their GitHub profile, and only
+     * checked once found in an analyzed repository.
+     * Anonymous developers are not confirmed if they have no email, or if
+     * they share a name or an email with a developer having a login.
+     *
+     * @return the first unsigned developer not from Nuxeo, null if none
+     */
+    protected Developer findConfirmedUnsigned() throws IOException {
+        List<String> incompletes = new ArrayList<>();
+        for (Developer dev : developersByLogin.values()) {
+            if (!dev.isComplete() && !checkedDevelopers.contains(dev.getLogin())
+                    && !nxDevelopersByLogin.containsKey(dev.getLogin())
+                    && foundDevelopers.contains(dev.getLogin())) {
+                incompletes.add(dev.getLogin());
+            }
+        }
+        Map<String, User> users = userResolver.resolve(incompletes);
+        for (Developer dev : developersByLogin.values()) {
+            if (!dev.isComplete() && !foundDevelopers.contains(dev.getLogin())) {
+                continue;
+            }
+            if (!checkedDevelopers.add(dev.getLogin())) {
+                continue;
+            }
+            dev.set(users.get(dev.getLogin()));
+            if (isExternal(dev) && dev.isUnsigned()) {
+                return dev;
+            }
+        }
+        for (Developer dev : developersByName.values()) {
+            if (!checkedDevelopers.add("name:" + dev.getName())) {
+                continue;
+            }
+            if (isExternal(dev) && dev.isUnsigned() && !dev.getEmails().isEmpty()
+                    && !isKnownIdentity(dev)) {
+                return dev;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return false for a Developers team member or a Nuxeo email
+     */
+    private boolean isExternal(Developer dev) {
+        return !"Nuxeo".equalsIgnoreCase(dev.getCompany())
+                && (dev.getLogin() == null || !nxDevelopersByLogin.containsKey(dev.getLogin()))
+                && !CollectionUtils.exists(dev.getEmails(), new NuxeoEmailPredicate());
+    }
+
+    /**
+     * @return true if the anonymous developer may be merged with a developer
+     *         having a login
+     * @see #fillAndSyncDevMaps()
+     */
+    private boolean isKnownIdentity(Developer anonymous) {
+        for (Developer dev : developersByLogin.values()) {
+            if (anonymous.getName().equals(dev.getName())
+                    || anonymous.getName().equals(dev.getLogin())
+                    || !CollectionUtils.intersection(dev.getEmails(),
+                            anonymous.getEmails()).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean stopOnUnsigned(Developer unsigned, Repository repo,
+            int analyzed) throws IOException {
+        log.error(String.format(
+                "Unsigned contributor %s found in %s: stopped after %s of %s repositories",
+                IdentityMatcher.describe(unsigned), repo == null ? input
+                        : repo.getName(), analyzed, repositories.size()));
+        saveResponseCache();
+        return true;
+    }
+
+    /**
+     * By HTML URL, so that a commit shared by several repositories is
+     * attributed to the same repository at each execution
+     *
+     * @see Developer#addCommits(java.util.Collection)
+     */
+    private static void sortByUrl(List<Repository> repositories) {
+        Collections.sort(repositories, new Comparator<Repository>() {
+            @Override
+            public int compare(Repository r1, Repository r2) {
+                return r1.getHtmlUrl().compareTo(r2.getHtmlUrl());
+            }
+        });
+    }
+
+    /**
+     * Most recently pushed first, never pushed last
+     */
+    private static void sortByPushDate(List<Repository> repositories) {
+        Collections.sort(repositories, new Comparator<Repository>() {
+            @Override
+            public int compare(Repository r1, Repository r2) {
+                Date d1 = r1.getPushedAt();
+                Date d2 = r2.getPushedAt();
+                if (d1 == null || d2 == null) {
+                    return d1 == d2 ? 0 : d1 == null ? 1 : -1;
+                }
+                return d2.compareTo(d1);
+            }
+        });
+    }
+
+    private void skipped(List<Repository> done,
+            RequestBudgetExceededException e) {
+        List<String> skipped = new ArrayList<>();
+        for (Repository repo : repositories) {
+            if (!done.contains(repo)) {
+                skipped.add(repo.getName());
+            }
+        }
+        log.warn(String.format("%s, partial results: skipped %s", e.getMessage(),
+                skipped));
+    }
+
+    private void requeue(List<Repository> requeued, Repository repo,
+            IOException e) {
+        if (e instanceof CircuitOpenException) {
+            log.warn(String.format("%s, deferred: %s", e.getMessage(),
+                    repo.getName()));
+            deferredUntil = Math.max(deferredUntil,
+                    ((CircuitOpenException) e).getOpenUntil());
+        } else {
+            log.warn(String.format("Failure with %s, re-queued: %s",
+                    repo.getName(), e.getMessage()));
+        }
+        if (!requeued.contains(repo)) {
+            requeued.add(repo);
+        }
+    }
+
+    /**
+     * Wait for the circuits opened during the first pass to be half-opened
+     * before retrying the deferred repositories
+     */
+    private void awaitDeferred() throws IOException {
+        long delay = deferredUntil - System.currentTimeMillis();
+        deferredUntil = 0;
+        if (delay <= 0) {
+            return;
+        }
+        log.info(String.format("Waiting %sms for the open circuits", delay));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private void fail(List<Repository> failures, Repository repo,
+            IOException e) {
+        log.error("Failure with: " + repo.getUrl(), e);
+        if (!failures.contains(repo)) {
+            failures.add(repo);
+        }
     }
 
     /**
@@ -209,17 +888,9 @@ public class Analyzer {
         if (!Files.isReadable(input)) {
             return;
         }
-        try (CSVReader reader = new CSVReader(Files.newBufferedReader(input,
-                Charset.defaultCharset()), '\t')) {
-            // Check header
-            String[] header = reader.readNext();
-            if (!ArrayUtils.isEquals(CSV_HEADER, header)) {
-                log.warn("Header mismatch " + Arrays.toString(header));
-                return;
-            }
-            String[] nextLine;
-            while ((nextLine = reader.readNext()) != null) {
-                Developer dev = parse(nextLine);
+        try {
+            for (Developer dev : ContributorsFile.read(input)) {
+                changeSet.addPrevious(dev);
                 if (dev.isAnonymous()) {
                     developersByName.put(dev.getName(), dev);
                 } else {
@@ -260,6 +931,16 @@ public class Analyzer {
         allContributors.addAll(developersByLogin.values());
         allContributors.addAll(developersByName.values());
         log.info(String.format("Found %s contributors", allContributors.size()));
+        List<IdentityMatcher.Match> matches = new IdentityMatcher(
+                allContributors).getMatches();
+        if (!matches.isEmpty()) {
+            log.info(String.format(
+                    "Found %s suggested aliases, logged at debug level",
+                    matches.size()));
+        }
+        for (IdentityMatcher.Match match : matches) {
+            log.debug("Suggested alias, possibly the same developer: " + match);
+        }
         if (output == null) {
             output = Paths.get(System.getProperty("java.io.tmpdir"),
                     "contributors.csv");
@@ -272,28 +953,33 @@ public class Analyzer {
             log.error(e.getMessage(), e);
             return false;
         }
-        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(tmpFile,
-                Charset.defaultCharset()), '\t')) {
-            writer.writeNext(CSV_HEADER);
-            for (Developer dev : allContributors) {
-                if (!unsigned && dev.getAliases().isEmpty()
-                        && !"Nuxeo".equalsIgnoreCase(dev.getCompany())
-                        && !dev.isSigned()) {
-                    unsigned = true;
+        try {
+            try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(
+                    tmpFile, Charset.defaultCharset()),
+                    ContributorsFile.SEPARATOR)) {
+                writer.writeNext(ContributorsFile.CSV_HEADER);
+                for (Developer dev : allContributors) {
+                    if (!unsigned && dev.isUnsigned()) {
+                        unsigned = true;
+                    }
+                    log.debug(dev);
+                    changeSet.compare(dev);
+                    writer.writeNext(new String[] {
+                            dev.getLogin(),
+                            dev.getName(),
+                            Boolean.toString(dev.isSigned()),
+                            setToString(dev.getEmails()),
+                            dev.getCompany(),
+                            dev.getUrl(),
+                            setToString(dev.getAliases()),
+                            ContributorsFile.isCommitsListed(dev) ? commitsToString(dev.getCommits())
+                                    : "",
+                            "",
+                            ContributorsFile.isCommitsListed(dev) ? commitsToString(dev.getSignedOffCommits())
+                                    : "",
+                            ContributorsFile.isCommitsListed(dev) ? commitsToString(dev.getCommittedCommits())
+                                    : "" });
                 }
-                log.debug(dev);
-                writer.writeNext(new String[] {
-                        dev.getLogin(),
-                        dev.getName(),
-                        Boolean.toString(dev.isSigned()),
-                        setToString(dev.getEmails()),
-                        dev.getCompany(),
-                        dev.getUrl(),
-                        setToString(dev.getAliases()),
-                        dev.isSigned()
-                                || "Nuxeo".equalsIgnoreCase(dev.getCompany())
-                                || "ex-Nuxeo".equalsIgnoreCase(dev.getCompany()) ? ""
-                                : commitsToString(dev.getCommits()) });
             }
             Files.copy(tmpFile, output, StandardCopyOption.REPLACE_EXISTING);
             Files.delete(tmpFile);
@@ -303,9 +989,62 @@ public class Analyzer {
                     "See " + tmpFile + System.lineSeparator() + e.getMessage(),
                     e);
         }
+        saveChanges();
+        saveStats();
         return unsigned;
     }
 
+    /**
+     * Save the changes since the previous state read from the input file
+     *
+     * @see ChangeSet
+     */
+    protected void saveChanges() {
+        if (!changeSet.hasPrevious()) {
+            log.info("No previous state: skipped the changes report");
+            return;
+        }
+        changeSet.compareMerged(allDevelopersByName);
+        if (changes == null) {
+            changes = getOutputSibling("-changes");
+        }
+        try {
+            changeSet.write(changes);
+            log.info(String.format("Changes: %s. Saved to file: %s",
+                    changeSet, changes));
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    protected void saveStats() {
+        if (contributionStats.getCommits() == 0) {
+            log.debug("No commit parsed: skipped the statistics");
+            return;
+        }
+        if (stats == null) {
+            stats = getOutputSibling("-stats");
+        }
+        try {
+            contributionStats.write(stats);
+            log.info(String.format("Statistics: %s. Saved to file: %s",
+                    contributionStats, stats));
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the output file name with the given suffix before its
+     *         extension
+     */
+    private Path getOutputSibling(String suffix) {
+        String name = output.getFileName().toString();
+        return output.resolveSibling(name.endsWith(".csv") ? name.substring(0,
+                name.length() - ".csv".length())
+                + suffix + ".csv" : name + suffix);
+    }
+
     private String setToString(Set<String> strings) {
         StringBuilder sb = new StringBuilder();
         for (Iterator<String> it = strings.iterator(); it.hasNext();) {
@@ -339,6 +1078,7 @@ public class Analyzer {
 
     protected void fillAndSyncDevMaps() throws IOException {
         // Fill missing values for known developers (with login)
+        List<String> incompletes = new ArrayList<>();
         for (Developer dev : developersByLogin.values()) {
             if (!dev.isComplete()) {
                 User nxDev = nxDevelopersByLogin.get(dev.getLogin());
@@ -348,17 +1088,12 @@ public class Analyzer {
                 }
             }
             if (!dev.isComplete()) {
-                try {
-                    // TODO: use a cache
-                    dev.set(userService.getUser(dev.getLogin()));
-                } catch (IOException e) {
-                    if (e.getCause() instanceof JsonSyntaxException) {
-                        // ignore
-                    } else {
-                        throw e;
-                    }
-                }
+                incompletes.add(dev.getLogin());
             }
+        }
+        Map<String, User> users = userResolver.resolve(incompletes);
+        for (Developer dev : developersByLogin.values()) {
+            dev.set(users.get(dev.getLogin()));
             if (dev.getName() != null) {
                 Developer removed = developersByName.remove(dev.getName());
                 if (removed != null) {
@@ -417,7 +1152,18 @@ public class Analyzer {
         }
         log.debug("Looking for commits from " + dev);
         for (Repository repository : repositories) {
-            List<RepositoryCommit> commits = getRepositoryCommits(repository);
+            List<RepositoryCommit> commits;
+            try {
+                commits = getRepositoryCommits(repository);
+            } catch (RequestException e) {
+                log.warn(String.format("Skipped %s: %s", repository.getName(),
+                        e.getMessage()));
+                continue;
+            } catch (RequestBudgetExceededException e) {
+                log.debug(String.format("Stop looking for %s: %s", dev,
+                        e.getMessage()));
+                return false;
+            }
             for (RepositoryCommit commit : commits) {
                 CommitUser committer = commit.getCommit().getAuthor();
                 if (committer != null
@@ -439,7 +1185,9 @@ public class Analyzer {
     }
 
     /**
-     * Keeps a cache ({@link #commitsByRepository}) to avoid repetitive requests
+     * Keeps a cache ({@link #commitsByRepository}) to avoid repetitive
+     * requests, spilled to disk beyond the memory budget. Failures are not
+     * cached, except for empty repositories.
      */
     private List<RepositoryCommit> getRepositoryCommits(Repository repository)
             throws IOException {
@@ -449,7 +1197,10 @@ public class Analyzer {
                 log.debug("Get commits from " + repository);
                 commits = commitService.getCommits(repository);
             } catch (RequestException e) {
-                log.error("Failure with: " + repository.getUrl(), e);
+                if (e.getStatus() != HTTP_EMPTY_REPOSITORY) {
+                    throw e;
+                }
+                log.debug("Empty repository: " + repository.getUrl());
                 commits = new ArrayList<>();
             }
             commitsByRepository.put(repository.getId(), commits);
@@ -472,6 +1223,7 @@ public class Analyzer {
                 dev.addRepository(repo);
                 developersByName.put(contributor.getName(), dev);
             } else {
+                foundDevelopers.add(contributor.getLogin());
                 Developer dev = developersByLogin.get(contributor.getLogin());
                 if (dev == null) {
                     dev = new Developer(contributor);
@@ -497,6 +1249,7 @@ public class Analyzer {
      *
      */
     protected void printCommitters() throws IOException {
+        sortByUrl(repositories);
         for (Repository repo : repositories) {
             getCommitters(repo);
         }
@@ -505,31 +1258,48 @@ public class Analyzer {
     }
 
     /**
-     * Extracting contributors list from CommitService
+     * Extracting contributors list from CommitService. Commits already parsed
+     * from another repository (shared history) are skipped: repositories must
+     * be parsed by URL for a stable attribution.
      */
     protected void getCommitters(Repository repo) throws IOException {
+        addCommitters(submitCommitters(repo).join());
+    }
+
+    /**
+     * Asynchronously aggregate the new commits of the repository, to be
+     * added with {@link #addCommitters(CommitAggregator.Partial)}
+     */
+    protected ForkJoinTask<CommitAggregator.Partial> submitCommitters(
+            Repository repo) throws IOException {
+        // Ends once the commits are aggregated
+        final AnalyzerPhaseEvent event = AnalyzerPhaseEvent.start(
+                "getCommitters", repo.getName());
         log.debug("Parsing " + repo.getName());
         List<RepositoryCommit> commits = getRepositoryCommits(repo);
+        List<RepositoryCommit> newCommits = new ArrayList<>(commits.size());
         for (RepositoryCommit commit : commits) {
-            getCommitter(commit, commit.getAuthor(),
-                    commit.getCommit().getAuthor());
-            getCommitter(commit, commit.getCommitter(),
-                    commit.getCommit().getCommitter());
+            if (seenCommits.add(commit.getSha())) {
+                newCommits.add(commit);
+                contributionStats.add(repo.getName(), commit,
+                        !isNuxeoAuthor(commit));
+            }
         }
+        if (newCommits.size() < commits.size()) {
+            log.debug(String.format("Skipped %s commits already seen in %s",
+                    commits.size() - newCommits.size(), repo.getName()));
+        }
+        return commitAggregator.submit(newCommits, new Runnable() {
+            @Override
+            public void run() {
+                event.commit();
+            }
+        });
     }
 
-    protected void getCommitter(RepositoryCommit commit, User committer,
-            CommitUser commitUser) {
-        if (committer == null || committer.getLogin() == null) {
-            Developer dev = allDevelopersByName.get(commitUser.getName());
-            if (dev == null) {
-                dev = new Developer(commitUser.getName());
-                dev.addEmail(commitUser.getEmail());
-                developersByName.put(dev.getName(), dev);
-                allDevelopersByName.put(dev.getName(), dev);
-            }
-            dev.addCommit(commit);
-        } else {
+    protected void addCommitters(CommitAggregator.Partial committers) {
+        for (CommitAggregator.Contribution contribution : committers.getByLogin().values()) {
+            User committer = contribution.getUser();
             Developer dev = developersByLogin.get(committer.getLogin());
             if (dev == null) {
                 dev = new Developer(committer);
@@ -539,9 +1309,38 @@ public class Analyzer {
                 }
             }
             if (!nxDevelopersByLogin.containsKey(dev.getLogin())) {
-                dev.addCommit(commit);
+                dev.addCommits(contribution.getCommits());
+                dev.addSignedOffCommits(contribution.getSignedOffCommits());
+                dev.addCommittedCommits(contribution.getCommittedCommits());
             }
         }
+        for (CommitAggregator.Contribution contribution : committers.getByName().values()) {
+            CommitUser commitUser = contribution.getCommitUser();
+            Developer dev = allDevelopersByName.get(commitUser.getName());
+            if (dev == null) {
+                dev = new Developer(commitUser.getName());
+                dev.addEmail(commitUser.getEmail());
+                developersByName.put(dev.getName(), dev);
+                allDevelopersByName.put(dev.getName(), dev);
+            }
+            dev.addCommits(contribution.getCommits());
+            dev.addSignedOffCommits(contribution.getSignedOffCommits());
+            dev.addCommittedCommits(contribution.getCommittedCommits());
+        }
+    }
+
+    /**
+     * @return true if the commit author is a member of the Developers team or
+     *         has a Nuxeo email
+     */
+    private boolean isNuxeoAuthor(RepositoryCommit commit) {
+        if (commit.getAuthor() != null
+                && nxDevelopersByLogin.containsKey(commit.getAuthor().getLogin())) {
+            return true;
+        }
+        return commit.getCommit() != null
+                && commit.getCommit().getAuthor() != null
+                && new NuxeoEmailPredicate().evaluate(commit.getCommit().getAuthor().getEmail());
     }
 
     protected void setNuxeoDevelopers() throws IOException {
@@ -567,63 +1366,24 @@ public class Analyzer {
     }
 
     /**
-     * @param line String[] { "Login", "Name", "Emails",
-     *            "Company", "URL", "Aliases", "Signed" }
+     * @param stats Absolute or relative path to the statistics per
+     *            repository and month.
+     */
+    public void setStats(String stats) {
+        this.stats = Paths.get(stats);
+    }
+
+    /**
+     * @param changes Absolute or relative path to the changes report.
+     */
+    public void setChanges(String changes) {
+        this.changes = Paths.get(changes);
+    }
+
+    /**
+     * @see ContributorsFile#parse(String[])
      */
     public Developer parse(String[] line) {
-        Developer dev = new Developer();
-        String str = line[0];
-        if (StringUtils.isNotBlank(str)) {
-            dev.setLogin(str);
-            dev.setAnonymous(false);
-        } else {
-            dev.setAnonymous(true);
-        }
-        str = line[1];
-        if (StringUtils.isNotBlank(str)) {
-            dev.setName(str);
-        }
-        str = line[2];
-        if (StringUtils.isNotBlank(str)) {
-            dev.signed = Boolean.parseBoolean(str);
-        }
-        str = line[3];
-        if (StringUtils.isNotBlank(str)) {
-            String[] emails = str.trim().split(System.lineSeparator());
-            for (String email : emails) {
-                dev.addEmail(email.trim());
-            }
-        }
-        str = line[4];
-        if (StringUtils.isNotBlank(str)) {
-            dev.setCompany(str);
-        }
-        str = line[5];
-        if (StringUtils.isNotBlank(str)) {
-            dev.setUrl(str);
-        }
-        str = line[6];
-        if (StringUtils.isNotBlank(str)) {
-            String[] aliases = str.trim().split(System.lineSeparator());
-            for (String alias : aliases) {
-                dev.aliases.add(alias.trim());
-            }
-        }
-        str = line[7];
-        if (StringUtils.isNotBlank(str)) {
-            String[] commits = str.trim().split(System.lineSeparator());
-            String base = "";
-            for (String commit : commits) {
-                commit = commit.trim();
-                if (base.length() > 0 && !commit.startsWith("http")) {
-                    dev.commits.add(base + commit);
-                } else {
-                    dev.commits.add(commit);
-                    base = commit.contains("commit/") ? commit.substring(0,
-                            commit.lastIndexOf("/")) : commit;
-                }
-            }
-        }
-        return dev;
+        return ContributorsFile.parse(line);
     }
 }
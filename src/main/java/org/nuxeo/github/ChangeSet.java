@@ -0,0 +1,198 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Changes between the previous contributors state and the current one,
+ * compared developer per developer while saving: new contributors, newly
+ * unsigned contributors, new commits, new aliases and anonymous developers
+ * merged into another one.
+ */
+public class ChangeSet {
+
+    public static final String[] CSV_HEADER = new String[] { "Change",
+            "Developer", "Details" };
+
+    public enum Change {
+        NEW, UNSIGNED, COMMITS, ALIAS, MERGED
+    }
+
+    /**
+     * Previous state of a developer
+     */
+    private static final class State {
+        final String name;
+
+        final boolean unsigned;
+
+        final Set<String> commits;
+
+        final Set<String> aliases;
+
+        State(Developer dev) {
+            name = dev.getName();
+            unsigned = dev.isUnsigned();
+            commits = new HashSet<>(dev.getCommits());
+            aliases = new HashSet<>(dev.getAliases());
+        }
+    }
+
+    private final Map<String, State> previous = new LinkedHashMap<>();
+
+    private final Set<String> seen = new HashSet<>();
+
+    private final List<String[]> changes = new ArrayList<>();
+
+    private final Map<Change, Integer> counts = new HashMap<>();
+
+    private static final String NAME_PREFIX = "name:";
+
+    /**
+     * @return the login, or the name prefixed with "name:" if anonymous, so
+     *         that a name and a login never collide
+     */
+    private static String getKey(Developer dev) {
+        return dev.isAnonymous() ? NAME_PREFIX + dev.getName() : dev.getLogin();
+    }
+
+    /**
+     * @return the login, or the name if anonymous
+     */
+    private static String getLabel(String key) {
+        return StringUtils.removeStart(key, NAME_PREFIX);
+    }
+
+    /**
+     * Record the previous state of the developer, before any update
+     */
+    public void addPrevious(Developer dev) {
+        previous.put(getKey(dev), new State(dev));
+    }
+
+    public boolean hasPrevious() {
+        return !previous.isEmpty();
+    }
+
+    /**
+     * Compare the current state of the developer with its previous state
+     */
+    public void compare(Developer dev) {
+        String key = getKey(dev);
+        seen.add(key);
+        State state = previous.get(key);
+        if (state == null) {
+            add(Change.NEW, key, "");
+        }
+        if (dev.isUnsigned() && (state == null || !state.unsigned)) {
+            add(Change.UNSIGNED, key, "");
+        }
+        if (ContributorsFile.isCommitsListed(dev)) {
+            List<String> commits = new ArrayList<>();
+            for (String commit : dev.getCommits()) {
+                if (state == null || !state.commits.contains(commit)) {
+                    commits.add(commit);
+                }
+            }
+            if (!commits.isEmpty()) {
+                add(Change.COMMITS, key,
+                        StringUtils.join(commits, System.lineSeparator()));
+            }
+        }
+        for (String alias : dev.getAliases()) {
+            if (state == null || !state.aliases.contains(alias)) {
+                add(Change.ALIAS, key, alias);
+            }
+        }
+    }
+
+    /**
+     * Report the previous anonymous developers which were not compared, once
+     * all current developers are compared
+     *
+     * @param developersByName current developers by name
+     */
+    public void compareMerged(Map<String, Developer> developersByName) {
+        for (Map.Entry<String, State> entry : previous.entrySet()) {
+            if (seen.contains(entry.getKey())) {
+                continue;
+            }
+            Developer dev = developersByName.get(entry.getValue().name);
+            add(Change.MERGED, entry.getKey(), dev == null ? ""
+                    : IdentityMatcher.describe(dev));
+        }
+    }
+
+    private void add(Change change, String key, String details) {
+        changes.add(new String[] { change.name(), getLabel(key), details });
+        Integer count = counts.get(change);
+        counts.put(change, count == null ? 1 : count + 1);
+    }
+
+    public List<String[]> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the number of changes of the given type
+     */
+    public int getCount(Change change) {
+        Integer count = counts.get(change);
+        return count == null ? 0 : count;
+    }
+
+    public void write(Path file) throws IOException {
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(file,
+                Charset.defaultCharset()), ContributorsFile.SEPARATOR)) {
+            writer.writeNext(CSV_HEADER);
+            for (String[] change : changes) {
+                writer.writeNext(change);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Change change : Change.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(getCount(change)).append(' ').append(
+                    change.name().toLowerCase());
+        }
+        return sb.toString();
+    }
+
+}
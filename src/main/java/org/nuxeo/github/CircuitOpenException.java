@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an endpoint which failed repeatedly,
+ * until its circuit is half-opened again.
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long openUntil;
+
+    public CircuitOpenException(String endpoint, long openUntil) {
+        super("Circuit open for endpoint " + endpoint);
+        this.openUntil = openUntil;
+    }
+
+    /**
+     * @return the time in milliseconds when a request will be tried again
+     */
+    public long getOpenUntil() {
+        return openUntil;
+    }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.eclipse.egit.github.core.CommitUser;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.User;
+
+/**
+ * Groups commits per author and committer on all cores. Commit lists are split
+ * into chunks aggregated into partial maps, which are merged in the commits
+ * order: the result doesn't depend on the threads scheduling.
+ */
+public class CommitAggregator {
+
+    /**
+     * Maximum number of commits aggregated by a single task
+     */
+    private static final int THRESHOLD = 1000;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Commits from a single author or committer
+     */
+    public static final class Contribution {
+        private final User user;
+
+        private final CommitUser commitUser;
+
+        private final List<String> commits = new ArrayList<>();
+
+        private final List<String> signedOffCommits = new ArrayList<>();
+
+        private final List<String> committedCommits = new ArrayList<>();
+
+        Contribution(User user, CommitUser commitUser) {
+            this.user = user;
+            this.commitUser = commitUser;
+        }
+
+        /**
+         * @return the first GitHub user seen; null if anonymous
+         */
+        public User getUser() {
+            return user;
+        }
+
+        /**
+         * @return the first Git user seen
+         */
+        public CommitUser getCommitUser() {
+            return commitUser;
+        }
+
+        /**
+         * @return commits HTML URLs
+         */
+        public List<String> getCommits() {
+            return commits;
+        }
+
+        /**
+         * @return HTML URLs of the authored commits signed off by their
+         *         author
+         * @see SignOffScanner
+         */
+        public List<String> getSignedOffCommits() {
+            return signedOffCommits;
+        }
+
+        /**
+         * @return HTML URLs of the commits committed but not authored
+         */
+        public List<String> getCommittedCommits() {
+            return committedCommits;
+        }
+    }
+
+    /**
+     * Contributions in order of first appearance
+     */
+    public static final class Partial {
+        private final Map<String, Contribution> byLogin = new LinkedHashMap<>();
+
+        private final Map<String, Contribution> byName = new LinkedHashMap<>();
+
+        public Map<String, Contribution> getByLogin() {
+            return byLogin;
+        }
+
+        public Map<String, Contribution> getByName() {
+            return byName;
+        }
+
+        void add(RepositoryCommit commit) {
+            String url = Developer.toHtmlUrl(commit.getUrl());
+            CommitUser author = commit.getCommit().getAuthor();
+            Contribution contribution = add(url, commit.getAuthor(), author);
+            if (contribution != null
+                    && SignOffScanner.isSignedOffBy(
+                            commit.getCommit().getMessage(), author)) {
+                contribution.signedOffCommits.add(url);
+            }
+            Contribution committer = add(url, commit.getCommitter(),
+                    commit.getCommit().getCommitter());
+            if (committer != null && committer != contribution) {
+                committer.committedCommits.add(url);
+            }
+        }
+
+        private Contribution add(String url, User user, CommitUser commitUser) {
+            Map<String, Contribution> map;
+            String key;
+            if (user == null || user.getLogin() == null) {
+                if (commitUser == null) {
+                    return null;
+                }
+                map = byName;
+                key = commitUser.getName();
+                user = null;
+            } else {
+                map = byLogin;
+                key = user.getLogin();
+            }
+            Contribution contribution = map.get(key);
+            if (contribution == null) {
+                contribution = new Contribution(user, commitUser);
+                map.put(key, contribution);
+            }
+            contribution.commits.add(url);
+            return contribution;
+        }
+
+        /**
+         * Merge contributions following this one
+         */
+        public Partial merge(Partial next) {
+            merge(byLogin, next.byLogin);
+            merge(byName, next.byName);
+            return this;
+        }
+
+        private static void merge(Map<String, Contribution> map,
+                Map<String, Contribution> next) {
+            for (Entry<String, Contribution> entry : next.entrySet()) {
+                Contribution contribution = map.get(entry.getKey());
+                if (contribution == null) {
+                    map.put(entry.getKey(), entry.getValue());
+                } else {
+                    contribution.commits.addAll(entry.getValue().commits);
+                    contribution.signedOffCommits.addAll(entry.getValue().signedOffCommits);
+                    contribution.committedCommits.addAll(entry.getValue().committedCommits);
+                }
+            }
+        }
+    }
+
+    private static final class AggregateTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<RepositoryCommit> commits;
+
+        private final int from;
+
+        private final int to;
+
+        AggregateTask(List<RepositoryCommit> commits, int from, int to) {
+            this.commits = commits;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= THRESHOLD) {
+                Partial partial = new Partial();
+                for (int i = from; i < to; i++) {
+                    partial.add(commits.get(i));
+                }
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(commits, from, middle);
+            left.fork();
+            Partial right = new AggregateTask(commits, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    public CommitAggregator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CommitAggregator(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Releases the commits once aggregated: the submitted task may be kept
+     * until its result is joined.
+     */
+    private static final class SubmittedTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private List<RepositoryCommit> commits;
+
+        private final Runnable callback;
+
+        SubmittedTask(List<RepositoryCommit> commits, Runnable callback) {
+            this.commits = commits;
+            this.callback = callback;
+        }
+
+        @Override
+        protected Partial compute() {
+            try {
+                return new AggregateTask(commits, 0, commits.size()).compute();
+            } finally {
+                commits = null;
+                if (callback != null) {
+                    callback.run();
+                }
+            }
+        }
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Asynchronously aggregate the given commits
+     */
+    public ForkJoinTask<Partial> submit(List<RepositoryCommit> commits) {
+        return submit(commits, null);
+    }
+
+    /**
+     * Asynchronously aggregate the given commits, then run the callback from
+     * the aggregating thread, even on failure
+     */
+    public ForkJoinTask<Partial> submit(List<RepositoryCommit> commits,
+            Runnable callback) {
+        return pool.submit(new SubmittedTask(commits, callback));
+    }
+
+    /**
+     * Wait for the tasks and merge their results in the given order
+     */
+    public static Partial join(List<ForkJoinTask<Partial>> tasks) {
+        Partial result = new Partial();
+        for (ForkJoinTask<Partial> task : tasks) {
+            result.merge(task.join());
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.client.GsonUtils;
+import org.nuxeo.github.jfr.CacheLookupEvent;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Commits per repository, kept on heap within a memory budget. Beyond the
+ * budget, the least recently used repositories are evicted from the heap:
+ * their commits are written once to append-only segment files and read back
+ * through memory mapping when requested again. Spilled repositories are served
+ * from disk without being admitted back, so that scanning all the
+ * repositories (as when looking for an email) does not thrash the heap.
+ */
+public class CommitCache implements Closeable {
+
+    private static final Log log = LogFactory.getLog(CommitCache.class);
+
+    /**
+     * Rough heap footprint of a {@link RepositoryCommit} decoded by
+     * {@link LeanJsonDecoder}, used to estimate the cache size.
+     */
+    public static final long ESTIMATED_COMMIT_SIZE = 1024;
+
+    private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Type COMMITS_TYPE = new TypeToken<List<RepositoryCommit>>() {
+    }.getType();
+
+    private static final class Location {
+        final int segment;
+
+        final long offset;
+
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Heap budget in bytes; unbounded if lower than 1
+     */
+    private long budget;
+
+    private long hotSize = 0;
+
+    private final LinkedHashMap<Long, List<RepositoryCommit>> hot = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    private final Map<Long, Location> spilled = new HashMap<>();
+
+    private final List<FileChannel> segments = new ArrayList<>();
+
+    private Path directory;
+
+    public CommitCache() {
+        this(0);
+    }
+
+    /**
+     * @param budget heap budget in bytes; unbounded if lower than 1
+     */
+    public CommitCache(long budget) {
+        this.budget = budget;
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public synchronized boolean contains(long repositoryId) {
+        return hot.containsKey(repositoryId)
+                || spilled.containsKey(repositoryId);
+    }
+
+    /**
+     * @return null if the repository commits are not cached
+     */
+    public synchronized List<RepositoryCommit> get(long repositoryId)
+            throws IOException {
+        CacheLookupEvent event = CacheLookupEvent.start("commits",
+                Long.toString(repositoryId));
+        try {
+            List<RepositoryCommit> commits = hot.get(repositoryId);
+            if (commits == null) {
+                Location location = spilled.get(repositoryId);
+                if (location == null) {
+                    return null;
+                }
+                event.fromDisk = true;
+                commits = read(location);
+            }
+            event.hit = true;
+            event.size = commits.size();
+            return commits;
+        } finally {
+            event.commit();
+        }
+    }
+
+    public synchronized void put(long repositoryId,
+            List<RepositoryCommit> commits) throws IOException {
+        List<RepositoryCommit> previous = hot.remove(repositoryId);
+        if (previous != null) {
+            hotSize -= sizeOf(previous);
+        }
+        // Spilled copy is outdated
+        spilled.remove(repositoryId);
+        admit(repositoryId, commits);
+    }
+
+    private void admit(long repositoryId, List<RepositoryCommit> commits)
+            throws IOException {
+        hot.put(repositoryId, commits);
+        hotSize += sizeOf(commits);
+        if (budget <= 0) {
+            return;
+        }
+        // Evict least recently used repositories, except the last admitted
+        Iterator<Entry<Long, List<RepositoryCommit>>> it = hot.entrySet().iterator();
+        while (hotSize > budget && hot.size() > 1) {
+            Entry<Long, List<RepositoryCommit>> eldest = it.next();
+            if (!spilled.containsKey(eldest.getKey())) {
+                spilled.put(eldest.getKey(), write(eldest.getValue()));
+            }
+            hotSize -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private long sizeOf(List<RepositoryCommit> commits) {
+        return commits.size() * ESTIMATED_COMMIT_SIZE;
+    }
+
+    private Location write(List<RepositoryCommit> commits) throws IOException {
+        byte[] bytes = GsonUtils.toJson(commits).getBytes(UTF_8);
+        FileChannel segment = currentSegment(bytes.length);
+        long offset = segment.size();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            segment.write(buffer, offset + buffer.position());
+        }
+        log.debug(String.format("Spilled %s commits to segment %s",
+                commits.size(), segments.size() - 1));
+        return new Location(segments.size() - 1, offset, bytes.length);
+    }
+
+    private FileChannel currentSegment(int length) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("github-admin-commits");
+        }
+        if (segments.isEmpty()
+                || segments.get(segments.size() - 1).size() + length > MAX_SEGMENT_SIZE) {
+            Path path = directory.resolve(String.format("segment-%04d",
+                    segments.size()));
+            segments.add(FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        return segments.get(segments.size() - 1);
+    }
+
+    private List<RepositoryCommit> read(Location location) throws IOException {
+        MappedByteBuffer buffer = segments.get(location.segment).map(
+                FileChannel.MapMode.READ_ONLY, location.offset,
+                location.length);
+        return GsonUtils.fromJson(UTF_8.decode(buffer).toString(),
+                COMMITS_TYPE);
+    }
+
+    /**
+     * Clear the cache and delete the segment files. The cache remains usable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        hot.clear();
+        hotSize = 0;
+        spilled.clear();
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        if (directory != null) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(directory);
+            directory = null;
+        }
+    }
+
+}
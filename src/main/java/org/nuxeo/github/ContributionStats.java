@@ -0,0 +1,212 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.eclipse.egit.github.core.CommitUser;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.User;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Contribution statistics per repository and per month, aggregated while the
+ * commits are parsed: commits, external (non-Nuxeo) commits, and estimated
+ * distinct authors and external authors. Memory doesn't depend on the
+ * number of commits nor authors: each counter holds fixed size
+ * {@link HyperLogLog} estimators.
+ */
+public class ContributionStats {
+
+    public static final String[] CSV_HEADER = new String[] { "Repository",
+            "Month", "Commits", "External commits", "External share",
+            "Contributors", "External contributors" };
+
+    /**
+     * Repository name of the statistics over all repositories
+     */
+    public static final String ALL_REPOSITORIES = "*";
+
+    /**
+     * 256 bytes per estimator, with a standard error of 6.5%; lower below a
+     * hundred contributors
+     */
+    private static final int PRECISION = 8;
+
+    /**
+     * Month of the commits without date
+     */
+    private static final String UNKNOWN_MONTH = "unknown";
+
+    private final SimpleDateFormat monthFormat = new SimpleDateFormat(
+            "yyyy-MM", Locale.ENGLISH);
+
+    /**
+     * Commits and authors of a repository during a month
+     */
+    private static final class Counter {
+        long commits;
+
+        long externalCommits;
+
+        final HyperLogLog contributors = new HyperLogLog(PRECISION);
+
+        final HyperLogLog externalContributors = new HyperLogLog(PRECISION);
+
+        Counter merge(Counter other) {
+            commits += other.commits;
+            externalCommits += other.externalCommits;
+            contributors.merge(other.contributors);
+            externalContributors.merge(other.externalContributors);
+            return this;
+        }
+    }
+
+    /**
+     * Counters per repository, then per month
+     */
+    private final Map<String, Map<String, Counter>> counters = new TreeMap<>();
+
+    private long commits = 0;
+
+    public ContributionStats() {
+        monthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Count a commit of the repository, at its author date
+     *
+     * @param external true if the author is not a Nuxeo developer
+     */
+    public void add(String repository, RepositoryCommit commit,
+            boolean external) {
+        CommitUser commitUser = commit.getCommit() == null ? null
+                : commit.getCommit().getAuthor();
+        Date date = commitUser == null ? null : commitUser.getDate();
+        String month = date == null ? UNKNOWN_MONTH : monthFormat.format(date);
+        Map<String, Counter> months = counters.get(repository);
+        if (months == null) {
+            months = new TreeMap<>();
+            counters.put(repository, months);
+        }
+        Counter counter = months.get(month);
+        if (counter == null) {
+            counter = new Counter();
+            months.put(month, counter);
+        }
+        commits++;
+        counter.commits++;
+        if (external) {
+            counter.externalCommits++;
+        }
+        String author = getAuthor(commit.getAuthor(), commitUser);
+        if (author != null) {
+            counter.contributors.add(author);
+            if (external) {
+                counter.externalContributors.add(author);
+            }
+        }
+    }
+
+    /**
+     * @return the login, else the lower case email, else the name
+     */
+    private static String getAuthor(User user, CommitUser commitUser) {
+        if (user != null && user.getLogin() != null) {
+            return user.getLogin();
+        }
+        if (commitUser == null) {
+            return null;
+        }
+        if (commitUser.getEmail() != null) {
+            return "<" + commitUser.getEmail().toLowerCase(Locale.ENGLISH)
+                    + ">";
+        }
+        return commitUser.getName();
+    }
+
+    /**
+     * @return the number of commits counted
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Write the statistics per repository and month, followed by the
+     * statistics per month over all repositories
+     */
+    public void write(Path file) throws IOException {
+        Map<String, Counter> all = new TreeMap<>();
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(file,
+                Charset.defaultCharset()), ContributorsFile.SEPARATOR)) {
+            writer.writeNext(CSV_HEADER);
+            for (Map.Entry<String, Map<String, Counter>> repository : counters.entrySet()) {
+                for (Map.Entry<String, Counter> month : repository.getValue().entrySet()) {
+                    writer.writeNext(toLine(repository.getKey(),
+                            month.getKey(), month.getValue()));
+                    Counter total = all.get(month.getKey());
+                    if (total == null) {
+                        total = new Counter();
+                        all.put(month.getKey(), total);
+                    }
+                    total.merge(month.getValue());
+                }
+            }
+            for (Map.Entry<String, Counter> month : all.entrySet()) {
+                writer.writeNext(toLine(ALL_REPOSITORIES, month.getKey(),
+                        month.getValue()));
+            }
+        }
+    }
+
+    private static String[] toLine(String repository, String month,
+            Counter counter) {
+        return new String[] {
+                repository,
+                month,
+                Long.toString(counter.commits),
+                Long.toString(counter.externalCommits),
+                String.format(Locale.ENGLISH, "%.2f", (double) counter.externalCommits
+                        / counter.commits),
+                Long.toString(counter.contributors.cardinality()),
+                Long.toString(counter.externalContributors.cardinality()) };
+    }
+
+    @Override
+    public String toString() {
+        int buckets = 0;
+        for (Map<String, Counter> months : counters.values()) {
+            buckets += months.size();
+        }
+        return String.format("%s commits in %s repositories, %s months of activity",
+                commits, counters.size(), buckets);
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Read-only view of the contributors with lookup indexes by login, name,
+ * email, company, repository and signed status.<br/>
+ * Repositories are only known for developers whose commits are listed in the
+ * state file (non signed external contributors).
+ */
+public class ContributorIndex {
+
+    public enum Company {
+        NUXEO, EX_NUXEO, EXTERNAL;
+
+        public static Company of(String company) {
+            if ("Nuxeo".equalsIgnoreCase(company)) {
+                return NUXEO;
+            } else if ("ex-Nuxeo".equalsIgnoreCase(company)) {
+                return EX_NUXEO;
+            } else {
+                return EXTERNAL;
+            }
+        }
+    }
+
+    private static final Pattern REPOSITORY_PATTERN = Pattern.compile("https?://github\\.com/([^/]+/[^/]+).*");
+
+    private final List<Developer> developers;
+
+    private final Map<String, Developer> byLogin;
+
+    private final Map<String, List<Developer>> byName;
+
+    private final Map<String, List<Developer>> byEmail;
+
+    private final Map<Company, List<Developer>> byCompany;
+
+    private final Map<String, List<Developer>> byRepository;
+
+    private final List<Developer> signed;
+
+    private final List<Developer> unsigned;
+
+    public ContributorIndex(Collection<Developer> developers) {
+        this.developers = Collections.unmodifiableList(new ArrayList<>(
+                developers));
+        Map<String, Developer> logins = new HashMap<>();
+        Map<String, List<Developer>> names = new HashMap<>();
+        Map<String, List<Developer>> emails = new HashMap<>();
+        Map<Company, List<Developer>> companies = new EnumMap<>(Company.class);
+        Map<String, List<Developer>> repositories = new HashMap<>();
+        List<Developer> signedDevs = new ArrayList<>();
+        List<Developer> unsignedDevs = new ArrayList<>();
+        for (Developer dev : this.developers) {
+            if (StringUtils.isNotBlank(dev.getLogin())) {
+                logins.put(dev.getLogin().toLowerCase(), dev);
+            }
+            if (StringUtils.isNotBlank(dev.getName())) {
+                add(names, dev.getName().toLowerCase(), dev);
+            }
+            for (String email : dev.getEmails()) {
+                if (StringUtils.isNotBlank(email)) {
+                    add(emails, email.toLowerCase(), dev);
+                }
+            }
+            add(companies, Company.of(dev.getCompany()), dev);
+            for (String repository : getRepositories(dev)) {
+                add(repositories, repository, dev);
+            }
+            if (dev.isSigned()) {
+                signedDevs.add(dev);
+            }
+            if (dev.isUnsigned()) {
+                unsignedDevs.add(dev);
+            }
+        }
+        byLogin = Collections.unmodifiableMap(logins);
+        byName = freeze(names);
+        byEmail = freeze(emails);
+        byCompany = freeze(companies);
+        byRepository = freeze(repositories);
+        signed = Collections.unmodifiableList(signedDevs);
+        unsigned = Collections.unmodifiableList(unsignedDevs);
+    }
+
+    /**
+     * Load the index from a state file written by {@link Analyzer}
+     */
+    public static ContributorIndex load(Path file) throws IOException {
+        return new ContributorIndex(ContributorsFile.read(file));
+    }
+
+    /**
+     * @return the repositories, as "owner/name", the developer contributed to
+     */
+    public static Set<String> getRepositories(Developer dev) {
+        Set<String> repositories = new HashSet<>();
+        for (String url : dev.getCommits()) {
+            Matcher matcher = REPOSITORY_PATTERN.matcher(url);
+            if (matcher.matches()) {
+                repositories.add(matcher.group(1).toLowerCase());
+            }
+        }
+        return repositories;
+    }
+
+    private static <K> void add(Map<K, List<Developer>> map, K key,
+            Developer dev) {
+        List<Developer> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        list.add(dev);
+    }
+
+    private static <K> Map<K, List<Developer>> freeze(
+            Map<K, List<Developer>> map) {
+        for (Entry<K, List<Developer>> entry : map.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static List<Developer> get(Map<String, List<Developer>> map,
+            String key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        List<Developer> list = map.get(key.toLowerCase());
+        return list == null ? Collections.<Developer> emptyList() : list;
+    }
+
+    public List<Developer> getDevelopers() {
+        return developers;
+    }
+
+    /**
+     * @return null if unknown (case insensitive)
+     */
+    public Developer getByLogin(String login) {
+        return login == null ? null : byLogin.get(login.toLowerCase());
+    }
+
+    /**
+     * @param name case insensitive
+     */
+    public List<Developer> getByName(String name) {
+        return get(byName, name);
+    }
+
+    /**
+     * @param email case insensitive
+     */
+    public List<Developer> getByEmail(String email) {
+        return get(byEmail, email);
+    }
+
+    public List<Developer> getByCompany(Company company) {
+        List<Developer> list = byCompany.get(company);
+        return list == null ? Collections.<Developer> emptyList() : list;
+    }
+
+    /**
+     * @param repository "owner/name", case insensitive
+     */
+    public List<Developer> getByRepository(String repository) {
+        return get(byRepository, repository);
+    }
+
+    public Set<String> getRepositories() {
+        return byRepository.keySet();
+    }
+
+    /**
+     * @return developers who signed the Contributor Agreement
+     */
+    public List<Developer> getSigned() {
+        return signed;
+    }
+
+    /**
+     * @see Developer#isUnsigned()
+     */
+    public List<Developer> getUnsigned() {
+        return unsigned;
+    }
+
+    public int size() {
+        return developers.size();
+    }
+
+}
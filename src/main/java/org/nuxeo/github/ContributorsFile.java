@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Contributors state file: tab separated values, multiple values within a
+ * cell being separated with line separators.
+ */
+public class ContributorsFile {
+
+    private static final Log log = LogFactory.getLog(ContributorsFile.class);
+
+    public static final String[] CSV_HEADER = new String[] { "Login", "Name",
+            "Signed", "Emails", "Company", "URL", "Aliases", "Commits",
+            "Trivial commits", "Signed-off commits", "Committed commits" };
+
+    /**
+     * Headers of the files written before the "Signed-off commits" and
+     * "Committed commits" columns
+     */
+    private static final String[][] PREVIOUS_CSV_HEADERS = new String[][] {
+            Arrays.copyOf(CSV_HEADER, CSV_HEADER.length - 2),
+            Arrays.copyOf(CSV_HEADER, CSV_HEADER.length - 1) };
+
+    public static final char SEPARATOR = '\t';
+
+    private ContributorsFile() {
+    }
+
+    /**
+     * @return true if the commits of the developer are listed in the file:
+     *         not signed, neither Nuxeo nor ex-Nuxeo
+     */
+    public static boolean isCommitsListed(Developer dev) {
+        return !dev.isSigned() && !"Nuxeo".equalsIgnoreCase(dev.getCompany())
+                && !"ex-Nuxeo".equalsIgnoreCase(dev.getCompany());
+    }
+
+    /**
+     * @return the developers read from the file; empty if the header doesn't
+     *         match {@link #CSV_HEADER}, or one of its previous versions
+     */
+    public static List<Developer> read(Path file) throws IOException {
+        List<Developer> developers = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(file,
+                Charset.defaultCharset()), SEPARATOR)) {
+            // Check header
+            String[] header = reader.readNext();
+            if (!isHeader(header)) {
+                log.warn("Header mismatch " + Arrays.toString(header));
+                return developers;
+            }
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                developers.add(parse(nextLine));
+            }
+        }
+        return developers;
+    }
+
+    private static boolean isHeader(String[] header) {
+        if (ArrayUtils.isEquals(CSV_HEADER, header)) {
+            return true;
+        }
+        for (String[] previous : PREVIOUS_CSV_HEADERS) {
+            if (ArrayUtils.isEquals(previous, header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param line String[] { "Login", "Name", "Signed", "Emails", "Company",
+     *            "URL", "Aliases", "Commits", "Trivial commits",
+     *            "Signed-off commits", "Committed commits" }; the last three
+     *            are optional
+     */
+    public static Developer parse(String[] line) {
+        Developer dev = new Developer();
+        String str = line[0];
+        if (StringUtils.isNotBlank(str)) {
+            dev.setLogin(str);
+            dev.setAnonymous(false);
+        } else {
+            dev.setAnonymous(true);
+        }
+        str = line[1];
+        if (StringUtils.isNotBlank(str)) {
+            dev.setName(str);
+        }
+        str = line[2];
+        if (StringUtils.isNotBlank(str)) {
+            dev.signed = Boolean.parseBoolean(str);
+        }
+        str = line[3];
+        if (StringUtils.isNotBlank(str)) {
+            String[] emails = str.trim().split(System.lineSeparator());
+            for (String email : emails) {
+                dev.addEmail(email.trim());
+            }
+        }
+        str = line[4];
+        if (StringUtils.isNotBlank(str)) {
+            dev.setCompany(str);
+        }
+        str = line[5];
+        if (StringUtils.isNotBlank(str)) {
+            dev.setUrl(str);
+        }
+        str = line[6];
+        if (StringUtils.isNotBlank(str)) {
+            String[] aliases = str.trim().split(System.lineSeparator());
+            for (String alias : aliases) {
+                dev.aliases.add(alias.trim());
+            }
+        }
+        // Drop the duplicates attributed to several repositories
+        Set<String> commits = new TreeSet<>();
+        parseCommits(line[7], commits);
+        dev.addCommits(commits);
+        if (line.length > 9) {
+            Set<String> signedOffCommits = new TreeSet<>();
+            parseCommits(line[9], signedOffCommits);
+            dev.addSignedOffCommits(signedOffCommits);
+        }
+        if (line.length > 10) {
+            Set<String> committedCommits = new TreeSet<>();
+            parseCommits(line[10], committedCommits);
+            dev.addCommittedCommits(committedCommits);
+        }
+        return dev;
+    }
+
+    /**
+     * Parse commits URLs, abbreviated to their SHA after the first commit of
+     * a repository
+     */
+    private static void parseCommits(String str, Set<String> commits) {
+        if (StringUtils.isBlank(str)) {
+            return;
+        }
+        String base = "";
+        for (String commit : str.trim().split(System.lineSeparator())) {
+            commit = commit.trim();
+            if (base.length() > 0 && !commit.startsWith("http")) {
+                commits.add(base + "/" + commit);
+            } else {
+                commits.add(commit);
+                base = commit.contains("commit/") ? commit.substring(0,
+                        commit.lastIndexOf("/")) : commit;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.Contributor;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.eclipse.egit.github.core.client.RequestException;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Estimates the number of GitHub requests needed by an analysis, at the cost
+ * of one or two requests per repository: resources are listed with a single
+ * item per page, so that the "last" page link gives their count.
+ */
+public class CostEstimator {
+
+    private static final Log log = LogFactory.getLog(CostEstimator.class);
+
+    private static final Type COMMITS_TYPE = new TypeToken<List<RepositoryCommit>>() {
+    }.getType();
+
+    private static final Type CONTRIBUTORS_TYPE = new TypeToken<List<Contributor>>() {
+    }.getType();
+
+    /**
+     * Requests for the "Developers" team and its members
+     */
+    private static final int TEAM_REQUESTS = 2;
+
+    private final GitHubClient client;
+
+    /**
+     * Response of the "/rate_limit" resource, which is not counted in the
+     * rate limit
+     */
+    public static class RateLimit {
+        private Rate rate;
+
+        public Rate getRate() {
+            return rate;
+        }
+    }
+
+    public static class Rate {
+        private int limit;
+
+        private int remaining;
+
+        private long reset;
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * @return reset date of the rate limit
+         */
+        public Date getReset() {
+            return new Date(reset * 1000);
+        }
+    }
+
+    public CostEstimator(GitHubClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return null if rate limiting is disabled (GitHub Enterprise)
+     */
+    public Rate getRate() throws IOException {
+        GitHubRequest request = new GitHubRequest().setUri("/rate_limit").setType(
+                RateLimit.class);
+        try {
+            RateLimit rateLimit = (RateLimit) client.get(request).getBody();
+            return rateLimit == null ? null : rateLimit.getRate();
+        } catch (RequestException e) {
+            if (e.getStatus() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public int countCommits(Repository repository) throws IOException {
+        try {
+            return count(repository, "/commits",
+                    Collections.<String, String> emptyMap(), COMMITS_TYPE);
+        } catch (RequestException e) {
+            if (e.getStatus() == 409) {
+                // Empty repository
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of contributors, including anonymous ones
+     */
+    public int countContributors(Repository repository) throws IOException {
+        return count(repository, "/contributors",
+                Collections.singletonMap("anon", "1"), CONTRIBUTORS_TYPE);
+    }
+
+    private int count(Repository repository, String resource,
+            Map<String, String> params, Type type)
+            throws IOException {
+        PagedRequest<Object> request = new PagedRequest<>(
+                PagedRequest.PAGE_FIRST, 1);
+        request.setUri("/repos/" + repository.getOwner().getLogin() + "/"
+                + repository.getName() + resource);
+        request.setParams(params);
+        request.setType(type);
+        GitHubResponse response = client.get(request);
+        String last = response.getLast();
+        if (last != null) {
+            for (String param : last.substring(last.indexOf('?') + 1).split(
+                    "&")) {
+                if (param.startsWith("page=")) {
+                    return Integer.parseInt(param.substring("page=".length()));
+                }
+            }
+        }
+        Object body = response.getBody();
+        return body instanceof Collection ? ((Collection<?>) body).size() : 0;
+    }
+
+    /**
+     * @return the number of requests to list the given number of items
+     */
+    public static int pages(int items) {
+        return Math.max(1, (items + PagedRequest.PAGE_SIZE - 1)
+                / PagedRequest.PAGE_SIZE);
+    }
+
+    /**
+     * Log the estimated number of requests per repository and in total,
+     * compared with the remaining rate limit.
+     *
+     * @param exhaustive if true, include the commits listing
+     * @return the estimated total number of requests
+     */
+    public long printPlan(List<Repository> repositories, boolean exhaustive)
+            throws IOException {
+        long contributorsRequests = 0;
+        long commitsRequests = 0;
+        long usersRequests = 0;
+        for (Repository repository : repositories) {
+            int contributors = countContributors(repository);
+            contributorsRequests += pages(contributors);
+            // At most one user request per contributor
+            usersRequests += contributors;
+            String line = String.format("%-40s %6s contributors",
+                    repository.getName(), contributors);
+            if (exhaustive) {
+                int commits = countCommits(repository);
+                commitsRequests += pages(commits);
+                line += String.format(" %8s commits", commits);
+            }
+            log.info(line);
+        }
+        long total = TEAM_REQUESTS + contributorsRequests + commitsRequests
+                + usersRequests;
+        log.info(String.format("Estimated requests: %s for getContributors, "
+                + "%s for getCommitters, at most %s for getUser, "
+                + "%s for the Nuxeo developers team: %s in total",
+                contributorsRequests, commitsRequests, usersRequests,
+                TEAM_REQUESTS, total));
+        Rate rate = getRate();
+        if (rate != null) {
+            log.info(String.format(
+                    "Rate limit: %s remaining out of %s until %s",
+                    rate.getRemaining(), rate.getLimit(), rate.getReset()));
+            if (total > rate.getRemaining()) {
+                log.warn("The analysis may not fit in the remaining rate limit");
+            }
+        }
+        return total;
+    }
+
+}
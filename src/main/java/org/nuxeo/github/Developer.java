@@ -18,10 +18,12 @@
 
 package org.nuxeo.github;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
@@ -40,7 +42,11 @@ import org.eclipse.egit.github.core.User;
  */
 public class Developer implements Comparable<Developer> {
 
-    private static final Pattern COMMITS_PATTERN = Pattern.compile("https://api.github.com/repos/(.*)/commits/(.*)");
+    private static final String API_REPOS_URL = "https://api.github.com/repos/";
+
+    private static final String COMMITS_SEGMENT = "/commits/";
+
+    private static final String HTML_URL = "https://github.com/";
 
     private String login;
 
@@ -60,6 +66,16 @@ public class Developer implements Comparable<Developer> {
 
     Set<String> aliases = new HashSet<>();
 
+    /**
+     * Commits signed off by their author
+     */
+    Set<String> signedOffCommits = new TreeSet<>();
+
+    /**
+     * Commits committed but not authored by the developer
+     */
+    Set<String> committedCommits = new TreeSet<>();
+
     boolean signed = false;
 
     private static final StandardToStringStyle style;
@@ -221,8 +237,10 @@ public class Developer implements Comparable<Developer> {
             url = dev.getUrl();
         }
         if (anonymous) {
-            commits.addAll(dev.getCommits());
+            addCommits(dev.getCommits());
         }
+        signedOffCommits.addAll(dev.getSignedOffCommits());
+        committedCommits.addAll(dev.getCommittedCommits());
         signed = signed || dev.isSigned();
         return this;
     }
@@ -299,15 +317,137 @@ public class Developer implements Comparable<Developer> {
     }
 
     public void addCommit(RepositoryCommit commit) {
-        String htmlUrl = COMMITS_PATTERN.matcher(commit.getUrl()).replaceFirst(
-                "https://github.com/$1/commit/$2");
-        commits.add(htmlUrl);
+        commits.add(toHtmlUrl(commit.getUrl()));
+    }
+
+    /**
+     * A commit shared by several repositories is listed once, under the
+     * lowest repository URL, whatever the order the repositories were parsed
+     * in or the previous state attributed it to.
+     *
+     * @param htmlUrls commits URLs as returned by {@link #toHtmlUrl(String)}
+     */
+    public void addCommits(Collection<String> htmlUrls) {
+        Map<String, String> commitsBySha = indexBySha(commits);
+        for (String url : htmlUrls) {
+            String sha = getSha(url);
+            String known = sha == null ? null : commitsBySha.get(sha);
+            if (known == null) {
+                commits.add(url);
+                if (sha != null) {
+                    commitsBySha.put(sha, url);
+                }
+            } else if (getRepositoryUrl(url).compareTo(
+                    getRepositoryUrl(known)) < 0) {
+                commits.remove(known);
+                commits.add(url);
+                commitsBySha.put(sha, url);
+                if (signedOffCommits.remove(known)) {
+                    signedOffCommits.add(url);
+                }
+                if (committedCommits.remove(known)) {
+                    committedCommits.add(url);
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> indexBySha(Collection<String> htmlUrls) {
+        Map<String, String> index = new HashMap<>();
+        for (String url : htmlUrls) {
+            String sha = getSha(url);
+            if (sha != null) {
+                index.put(sha, url);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return null for a repository URL
+     */
+    private static String getSha(String htmlUrl) {
+        int index = htmlUrl.lastIndexOf("/commit/");
+        return index < 0 ? null : htmlUrl.substring(index + "/commit/".length());
+    }
+
+    private static String getRepositoryUrl(String htmlUrl) {
+        return StringUtils.substringBefore(htmlUrl, "/commit/");
+    }
+
+    /**
+     * Convert a commit API URL to its HTML URL. Other URLs are returned
+     * unchanged.
+     */
+    public static String toHtmlUrl(String url) {
+        if (url == null || !url.startsWith(API_REPOS_URL)) {
+            return url;
+        }
+        int index = url.lastIndexOf(COMMITS_SEGMENT);
+        if (index < API_REPOS_URL.length()) {
+            return url;
+        }
+        return HTML_URL + url.substring(API_REPOS_URL.length(), index)
+                + "/commit/" + url.substring(index + COMMITS_SEGMENT.length());
     }
 
     public Set<String> getCommits() {
         return commits;
     }
 
+    /**
+     * @param htmlUrls commits URLs signed off by their author
+     */
+    public void addSignedOffCommits(Collection<String> htmlUrls) {
+        addAttributed(htmlUrls, signedOffCommits);
+    }
+
+    public Set<String> getSignedOffCommits() {
+        return signedOffCommits;
+    }
+
+    /**
+     * @param htmlUrls commits URLs committed but not authored by the developer
+     */
+    public void addCommittedCommits(Collection<String> htmlUrls) {
+        addAttributed(htmlUrls, committedCommits);
+    }
+
+    public Set<String> getCommittedCommits() {
+        return committedCommits;
+    }
+
+    private void addAttributed(Collection<String> htmlUrls, Set<String> target) {
+        Map<String, String> commitsBySha = indexBySha(commits);
+        for (String url : htmlUrls) {
+            String sha = getSha(url);
+            // Listed under the repository the commit is attributed to
+            String attributed = sha == null ? null : commitsBySha.get(sha);
+            target.add(attributed == null ? url : attributed);
+        }
+    }
+
+    /**
+     * @return true if all the listed commits authored by the developer are
+     *         signed off by them (Developer Certificate of Origin). The
+     *         commits only committed are their author's responsibility.
+     */
+    public boolean isSignedOff() {
+        boolean found = false;
+        for (String commit : commits) {
+            if (!commit.contains("/commit/")) {
+                // Repository URL
+                continue;
+            }
+            if (!signedOffCommits.contains(commit)
+                    && !committedCommits.contains(commit)) {
+                return false;
+            }
+            found = true;
+        }
+        return found;
+    }
+
     public void addRepository(Repository repo) {
         commits.add(repo.getHtmlUrl());
     }
@@ -320,4 +460,13 @@ public class Developer implements Comparable<Developer> {
         return signed;
     }
 
+    /**
+     * @return true if not a Nuxeo developer, not an alias, the Contributor
+     *         Agreement is not signed and the commits are not all signed off
+     */
+    public boolean isUnsigned() {
+        return aliases.isEmpty() && !"Nuxeo".equalsIgnoreCase(company)
+                && !signed && !isSignedOff();
+    }
+
 }
@@ -0,0 +1,326 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Finds developers who are probably the same person, comparing normalized
+ * keys built from their names, logins and email local parts: lower case,
+ * without accents nor punctuation, words sorted. "Jean Dupont", "jean.dupont"
+ * and "DUPONT Jean" share the same key.<br/>
+ * Besides identical keys, similar keys are matched on the Jaccard similarity
+ * of their trigrams. Candidates are only searched among keys sharing a
+ * trigram (blocking), trigrams shared by too many keys being ignored, so that
+ * the cost grows almost linearly with the number of developers.<br/>
+ * Digits tell developers apart ("dev9" and "dev111", "Developer 6" and
+ * "Developer 66"): keys with different digits never match.
+ */
+public class IdentityMatcher {
+
+    public static final double DEFAULT_THRESHOLD = 0.8;
+
+    /**
+     * Keys shorter than that are too ambiguous
+     */
+    private static final int MIN_KEY_LENGTH = 4;
+
+    /**
+     * Blocks larger than that are ignored
+     */
+    private static final int MAX_BLOCK_SIZE = 50;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D+");
+
+    private static final String NOREPLY_DOMAIN = "@users.noreply.github.com";
+
+    private final List<Developer> developers;
+
+    private final double threshold;
+
+    /**
+     * A key of a developer
+     */
+    private static final class Entry {
+        final int developer;
+
+        final String key;
+
+        final Set<String> trigrams;
+
+        /**
+         * Digits of the key, separated with a space
+         */
+        final String digits;
+
+        Entry(int developer, String key) {
+            this.developer = developer;
+            this.key = key;
+            this.trigrams = trigrams(key);
+            this.digits = NON_DIGITS.matcher(key).replaceAll(" ").trim();
+        }
+    }
+
+    /**
+     * Two developers who are probably the same person
+     */
+    public static final class Match {
+        private final Developer first;
+
+        private final Developer second;
+
+        private final double similarity;
+
+        Match(Developer first, Developer second, double similarity) {
+            this.first = first;
+            this.second = second;
+            this.similarity = similarity;
+        }
+
+        public Developer getFirst() {
+            return first;
+        }
+
+        public Developer getSecond() {
+            return second;
+        }
+
+        /**
+         * @return the highest similarity of their keys, 1 if a key is shared
+         */
+        public double getSimilarity() {
+            return similarity;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s ~ %s (%.2f)", describe(first),
+                    describe(second), similarity);
+        }
+    }
+
+    public IdentityMatcher(Collection<Developer> developers) {
+        this(developers, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold minimum Jaccard similarity of the keys trigrams, in
+     *            ]0, 1]
+     */
+    public IdentityMatcher(Collection<Developer> developers, double threshold) {
+        this.developers = new ArrayList<>(developers);
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return lower case words without accents nor punctuation, sorted and
+     *         separated with a space; empty if null
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = ACCENTS.matcher(
+                Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        String[] words = SEPARATORS.split(stripped.toLowerCase(Locale.ENGLISH).trim());
+        Arrays.sort(words);
+        return StringUtils.join(words, ' ').trim();
+    }
+
+    /**
+     * @return the normalized keys of the developer: name, login and email
+     *         local parts
+     */
+    public static Set<String> getKeys(Developer dev) {
+        Set<String> keys = new LinkedHashSet<>();
+        addKey(keys, dev.getName());
+        addKey(keys, dev.getLogin());
+        for (String email : dev.getEmails()) {
+            if (email == null || email.indexOf('@') < 1) {
+                continue;
+            }
+            String local = email.substring(0, email.indexOf('@'));
+            if (email.endsWith(NOREPLY_DOMAIN)) {
+                // "12345+login@users.noreply.github.com"
+                local = local.substring(local.indexOf('+') + 1);
+            }
+            addKey(keys, local);
+        }
+        return keys;
+    }
+
+    private static void addKey(Set<String> keys, String value) {
+        String key = normalize(value);
+        if (key.length() >= MIN_KEY_LENGTH) {
+            keys.add(key);
+        }
+    }
+
+    private static Set<String> trigrams(String key) {
+        String padded = "$" + key + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static double similarity(Entry e1, Entry e2) {
+        if (e1.key.equals(e2.key)) {
+            return 1;
+        }
+        if (!e1.digits.equals(e2.digits)) {
+            return 0;
+        }
+        int shared = 0;
+        for (String trigram : e1.trigrams) {
+            if (e2.trigrams.contains(trigram)) {
+                shared++;
+            }
+        }
+        return (double) shared
+                / (e1.trigrams.size() + e2.trigrams.size() - shared);
+    }
+
+    /**
+     * @return the matches in the developers order, excluding developers
+     *         already linked with an alias
+     */
+    public List<Match> getMatches() {
+        List<Entry> entries = new ArrayList<>();
+        // Blocks per key and per trigram: keys are longer than trigrams
+        Map<String, List<Entry>> blocks = new HashMap<>();
+        for (int i = 0; i < developers.size(); i++) {
+            for (String key : getKeys(developers.get(i))) {
+                Entry entry = new Entry(i, key);
+                entries.add(entry);
+                addToBlock(blocks, key, entry);
+                for (String trigram : entry.trigrams) {
+                    addToBlock(blocks, trigram, entry);
+                }
+            }
+        }
+        // Best similarity per pair of developers, in order of first match
+        Map<Long, Double> similarities = new HashMap<>();
+        List<Long> pairs = new ArrayList<>();
+        for (Entry entry : entries) {
+            // Shared trigrams per candidate, ignoring the largest blocks
+            Map<Entry, Integer> candidates = new LinkedHashMap<>();
+            int ignored = 0;
+            for (String trigram : entry.trigrams) {
+                if (!addCandidates(candidates, entry, blocks.get(trigram), 1)) {
+                    ignored++;
+                }
+            }
+            addCandidates(candidates, entry, blocks.get(entry.key),
+                    entry.trigrams.size());
+            // similarity <= shared / trigrams.size()
+            double minShared = threshold * entry.trigrams.size() - ignored;
+            for (Map.Entry<Entry, Integer> candidate : candidates.entrySet()) {
+                if (candidate.getValue() < minShared) {
+                    continue;
+                }
+                double similarity = similarity(entry, candidate.getKey());
+                if (similarity < threshold) {
+                    continue;
+                }
+                long pair = (long) entry.developer * developers.size()
+                        + candidate.getKey().developer;
+                Double previous = similarities.put(pair, similarity);
+                if (previous == null) {
+                    pairs.add(pair);
+                } else if (previous > similarity) {
+                    similarities.put(pair, previous);
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        for (Long pair : pairs) {
+            Developer first = developers.get((int) (pair / developers.size()));
+            Developer second = developers.get((int) (pair % developers.size()));
+            if (!isLinked(first, second)) {
+                matches.add(new Match(first, second, similarities.get(pair)));
+            }
+        }
+        return matches;
+    }
+
+    private static void addToBlock(Map<String, List<Entry>> blocks,
+            String key, Entry entry) {
+        List<Entry> block = blocks.get(key);
+        if (block == null) {
+            block = new ArrayList<>();
+            blocks.put(key, block);
+        }
+        block.add(entry);
+    }
+
+    /**
+     * Count the entries of the block from the following developers
+     *
+     * @return false if the block is too large
+     */
+    private static boolean addCandidates(Map<Entry, Integer> candidates,
+            Entry entry, List<Entry> block, int shared) {
+        if (block.size() > MAX_BLOCK_SIZE) {
+            return false;
+        }
+        for (Entry candidate : block) {
+            if (candidate.developer > entry.developer) {
+                Integer previous = candidates.get(candidate);
+                candidates.put(candidate, previous == null ? shared
+                        : previous + shared);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLinked(Developer dev1, Developer dev2) {
+        return dev1.getAliases().contains(dev2.getLogin())
+                || dev1.getAliases().contains(dev2.getName())
+                || dev2.getAliases().contains(dev1.getLogin())
+                || dev2.getAliases().contains(dev1.getName());
+    }
+
+    /**
+     * @return the login, or the name if anonymous
+     */
+    static String describe(Developer dev) {
+        return dev.getLogin() != null ? dev.getLogin() : dev.getName();
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.eclipse.egit.github.core.Commit;
+import org.eclipse.egit.github.core.CommitUser;
+import org.eclipse.egit.github.core.Contributor;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.User;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Streaming decoder of commits and contributors pages, reading only the
+ * fields used by the analysis; other values are skipped without being
+ * bound.<br/>
+ * Decoded commits only have their SHA, URL, author and committer logins and
+ * URLs, Git author and committer names, emails and dates, and a message
+ * reduced to its "Signed-off-by" trailers (see {@link SignOffScanner}). Decoded contributors
+ * only have their login, URL, name, type and contributions.
+ */
+public class LeanJsonDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Pages are decoded concurrently
+     */
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    private LeanJsonDecoder() {
+    }
+
+    /**
+     * @return true if the type is a list of {@link RepositoryCommit} or
+     *         {@link Contributor}
+     */
+    public static boolean supports(Type type) {
+        Type element = getListElement(type);
+        return element == RepositoryCommit.class
+                || element == Contributor.class;
+    }
+
+    private static Type getListElement(Type type) {
+        if (!(type instanceof ParameterizedType)
+                || ((ParameterizedType) type).getRawType() != List.class) {
+            return null;
+        }
+        return ((ParameterizedType) type).getActualTypeArguments()[0];
+    }
+
+    /**
+     * @param type a type for which {@link #supports(Type)} is true
+     * @throws IOException on read failure; caused by a
+     *             {@link JsonSyntaxException} if the JSON is invalid
+     */
+    public static List<?> decode(Type type, InputStream stream)
+            throws IOException {
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(stream, UTF_8)))) {
+            if (getListElement(type) == RepositoryCommit.class) {
+                return readCommits(reader);
+            }
+            return readContributors(reader);
+        } catch (MalformedJsonException | IllegalStateException
+                | NumberFormatException e) {
+            IOException ioe = new IOException(
+                    "Parse exception converting JSON to object");
+            ioe.initCause(new JsonSyntaxException(e));
+            throw ioe;
+        }
+    }
+
+    public static List<RepositoryCommit> readCommits(JsonReader reader)
+            throws IOException {
+        List<RepositoryCommit> commits = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            commits.add(readCommit(reader));
+        }
+        reader.endArray();
+        return commits;
+    }
+
+    private static RepositoryCommit readCommit(JsonReader reader)
+            throws IOException {
+        RepositoryCommit commit = new RepositoryCommit();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "sha":
+                commit.setSha(nextString(reader));
+                break;
+            case "url":
+                commit.setUrl(nextString(reader));
+                break;
+            case "author":
+                commit.setAuthor(readUser(reader));
+                break;
+            case "committer":
+                commit.setCommitter(readUser(reader));
+                break;
+            case "commit":
+                commit.setCommit(readGitCommit(reader));
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return commit;
+    }
+
+    private static Commit readGitCommit(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        Commit commit = new Commit();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "author":
+                commit.setAuthor(readCommitUser(reader));
+                break;
+            case "committer":
+                commit.setCommitter(readCommitUser(reader));
+                break;
+            case "message":
+                commit.setMessage(SignOffScanner.extract(nextString(reader)));
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return commit;
+    }
+
+    private static CommitUser readCommitUser(JsonReader reader)
+            throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        CommitUser user = new CommitUser();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "name":
+                user.setName(nextString(reader));
+                break;
+            case "email":
+                user.setEmail(nextString(reader));
+                break;
+            case "date":
+                user.setDate(nextDate(reader));
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return user;
+    }
+
+    private static User readUser(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        User user = new User();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "login":
+                user.setLogin(nextString(reader));
+                break;
+            case "url":
+                user.setUrl(nextString(reader));
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return user;
+    }
+
+    public static List<Contributor> readContributors(JsonReader reader)
+            throws IOException {
+        List<Contributor> contributors = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Contributor contributor = new Contributor();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                case "login":
+                    contributor.setLogin(nextString(reader));
+                    break;
+                case "url":
+                    contributor.setUrl(nextString(reader));
+                    break;
+                case "name":
+                    contributor.setName(nextString(reader));
+                    break;
+                case "type":
+                    contributor.setType(nextString(reader));
+                    break;
+                case "contributions":
+                    contributor.setContributions(reader.nextInt());
+                    break;
+                default:
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            contributors.add(contributor);
+        }
+        reader.endArray();
+        return contributors;
+    }
+
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        return skipNull(reader) ? null : reader.nextString();
+    }
+
+    /**
+     * @return null if missing or invalid
+     */
+    private static Date nextDate(JsonReader reader) throws IOException {
+        String date = nextString(reader);
+        if (date == null) {
+            return null;
+        }
+        try {
+            return DATE_FORMAT.get().parse(date);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+}
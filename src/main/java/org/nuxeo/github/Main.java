@@ -19,7 +19,13 @@
 package org.nuxeo.github;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -31,7 +37,6 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.eclipse.egit.github.core.client.GitHubClient;
 
 /**
  *
@@ -48,7 +53,13 @@ public class Main {
 
     private static final String OPTION_TOKEN = "token";
 
-    private static final String OPTION_TOKEN_DESC = "Use a Personal Access Token (OAuth)";
+    private static final String OPTION_TOKEN_DESC = "Use Personal Access Tokens (OAuth), separated with commas. "
+            + "Requests are shared among the tokens, also read from the " + TokenPool.ENV_TOKENS
+            + " environment variable.";
+
+    private static final String OPTION_TOKEN_FILE = "token-file";
+
+    private static final String OPTION_TOKEN_FILE_DESC = "File of Personal Access Tokens, one per line.";
 
     private static final String OPTION_EXHAUSTIVE = "exhaustive";
 
@@ -62,12 +73,82 @@ public class Main {
 
     private static final String OPTION_OUTPUT_DESC = "Output file (defaults to /tmp/contributors.csv). Can equal to input file.";
 
+    private static final String OPTION_CHANGES = "changes";
+
+    private static final String OPTION_CHANGES_DESC = "Report of the changes since the input file "
+            + "(defaults to the output file suffixed with '-changes').";
+
+    private static final String OPTION_STATS = "stats";
+
+    private static final String OPTION_STATS_DESC = "Contributors and external commits per repository and month, "
+            + "on exhaustive analysis (defaults to the output file suffixed with '-stats').";
+
+    private static final String OPTION_POOLED = "pooled";
+
+    private static final String OPTION_POOLED_DESC = "Use pooled keep-alive connections with gzip compression.";
+
+    private static final String OPTION_API = "api";
+
+    private static final String OPTION_API_DESC = "GitHub API URL (defaults to https://api.github.com). "
+            + "Other hosts are queried under '/api/v3'.";
+
+    private static final String OPTION_JOBS = "jobs";
+
+    private static final String OPTION_JOBS_DESC = "Maximum number of concurrent GitHub requests (defaults to "
+            + UserResolver.DEFAULT_CONCURRENCY + ").";
+
+    private static final String OPTION_MEMORY = "memory-budget";
+
+    private static final String OPTION_MEMORY_DESC = "Heap budget in MB for the commits cache. "
+            + "Beyond it, commits are spilled to disk (defaults to unbounded).";
+
+    private static final String OPTION_RETRIES = "retries";
+
+    private static final String OPTION_RETRIES_DESC = "Maximum number of retries for failed GitHub requests (defaults to "
+            + ResilientGitHubClient.DEFAULT_MAX_RETRIES + ").";
+
+    private static final String OPTION_HEDGE = "hedge";
+
+    private static final String OPTION_HEDGE_DESC = "Delay in milliseconds after which a slow GitHub request is sent again, "
+            + "the first response being used (disabled by default).";
+
+    private static final String OPTION_PLAN = "plan";
+
+    private static final String OPTION_PLAN_DESC = "Estimate the number of GitHub requests and check the rate limit, "
+            + "without running the analysis.";
+
+    private static final String OPTION_MAX_REQUESTS = "max-requests";
+
+    private static final String OPTION_MAX_REQUESTS_DESC = "Maximum number of GitHub requests. Once exceeded, "
+            + "the analysis stops and the partial results are saved (defaults to unlimited).";
+
+    private static final String OPTION_FAIL_FAST = "fail-fast";
+
+    private static final String OPTION_FAIL_FAST_DESC = "Analyze first the recently pushed repositories with external contributors, "
+            + "and stop at the first unsigned non-Nuxeo contributor (for CI gating). "
+            + "Not allowed with --exhaustive: sign-offs are only known once all the commits are analyzed.";
+
+    private static final String OPTION_CACHE = "cache";
+
+    private static final String OPTION_CACHE_DESC = "File keeping the repositories and team members between executions, "
+            + "revalidated with conditional requests (defaults to no cache).";
+
+    private static final String COMMAND_CHECK_PR = "check-pr";
+
+    private static final Pattern PULL_REQUEST_PATTERN = Pattern.compile("(?:([^/#]+)/)?([^/#]+)#(\\d+)");
+
     public static void main(String[] args) throws IOException {
         Analyzer analyzer = parseArgs(args);
         if (analyzer == null) {
             return;
         }
-        if (analyzer.analyzeAndPrint()) {
+        if (analyzer.isDryRun()) {
+            analyzer.printPlan();
+            return;
+        }
+        boolean unsigned = analyzer.isPullRequestCheck() ? analyzer.checkPullRequest()
+                : analyzer.analyzeAndPrint();
+        if (unsigned) {
             System.exit(1);
         }
     }
@@ -85,39 +166,82 @@ public class Main {
                 printHelp();
                 return null;
             }
-            GitHubClient client = new GitHubClient();
-            if (cmdLine.hasOption(OPTION_TOKEN)) {
-                client.setOAuth2Token(cmdLine.getOptionValue(OPTION_TOKEN));
+            List<String> tokens = getTokens(cmdLine);
+            ResilientGitHubClient client = createClient(cmdLine);
+            if (!tokens.isEmpty()) {
+                client.setTokens(tokens);
             }
             analyzer = new Analyzer(client);
+            if (cmdLine.hasOption(OPTION_EXHAUSTIVE)
+                    && cmdLine.hasOption(OPTION_FAIL_FAST)) {
+                throw new ParseException("--" + OPTION_FAIL_FAST
+                        + " cannot be used with --" + OPTION_EXHAUSTIVE);
+            }
             if (cmdLine.hasOption(OPTION_EXHAUSTIVE)) {
-                if (!cmdLine.hasOption(OPTION_TOKEN)) {
+                if (tokens.isEmpty()) {
                     throw new ParseException(
                             "A token is required for exhaustive analysis");
                 }
                 analyzer.setExhaustive(true);
             }
+            if (cmdLine.hasOption(OPTION_JOBS)) {
+                try {
+                    analyzer.setConcurrency(Integer.parseInt(cmdLine.getOptionValue(OPTION_JOBS)));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid number of jobs: "
+                            + cmdLine.getOptionValue(OPTION_JOBS));
+                }
+            }
+            if (cmdLine.hasOption(OPTION_MEMORY)) {
+                try {
+                    analyzer.setMemoryBudget(Long.parseLong(cmdLine.getOptionValue(OPTION_MEMORY)) * 1024 * 1024);
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid memory budget: "
+                            + cmdLine.getOptionValue(OPTION_MEMORY));
+                }
+            }
+            analyzer.setDryRun(cmdLine.hasOption(OPTION_PLAN));
+            analyzer.setFailFast(cmdLine.hasOption(OPTION_FAIL_FAST));
             if (cmdLine.hasOption(OPTION_INPUT)) {
                 analyzer.setInput(cmdLine.getOptionValue(OPTION_INPUT));
             }
             if (cmdLine.hasOption(OPTION_OUTPUT)) {
                 analyzer.setOutput(cmdLine.getOptionValue(OPTION_OUTPUT));
             }
-            if (cmdLine.getArgList().isEmpty()
+            if (cmdLine.hasOption(OPTION_CHANGES)) {
+                analyzer.setChanges(cmdLine.getOptionValue(OPTION_CHANGES));
+            }
+            if (cmdLine.hasOption(OPTION_STATS)) {
+                analyzer.setStats(cmdLine.getOptionValue(OPTION_STATS));
+            }
+            if (!cmdArgs.isEmpty() && COMMAND_CHECK_PR.equals(cmdArgs.get(0))) {
+                if (cmdArgs.size() != 2) {
+                    throw new ParseException("Expected a single pull-request: "
+                            + COMMAND_CHECK_PR + " owner/repo#N");
+                }
+                Matcher matcher = PULL_REQUEST_PATTERN.matcher(cmdArgs.get(1));
+                if (!matcher.matches()) {
+                    throw new ParseException("Invalid pull-request: "
+                            + cmdArgs.get(1));
+                }
+                String owner = matcher.group(1) == null ? "nuxeo"
+                        : matcher.group(1);
+                analyzer.setPullRequest(owner, matcher.group(2),
+                        Integer.parseInt(matcher.group(3)));
+            } else if (cmdLine.getArgList().isEmpty()
                     || cmdLine.getArgList().size() == 1
                     && "all".equals(cmdLine.getArgList().get(0))) {
                 analyzer.setAllNuxeoRepositories();
             } else {
+                List<String> repos = new ArrayList<>();
                 for (String argList : (List<String>) cmdLine.getArgList()) {
                     for (String repo : argList.split(" ")) {
-                        if (!repo.contains("/")) {
-                            analyzer.setNuxeoRepository(repo);
-                        } else {
-                            String[] split = repo.split("/");
-                            analyzer.setRepository(split[0], split[1]);
+                        if (!repo.isEmpty()) {
+                            repos.add(repo);
                         }
                     }
                 }
+                analyzer.setRepositories(repos);
             }
         } catch (ParseException | IOException e) {
             log.error(e.getMessage(), e);
@@ -127,6 +251,61 @@ public class Main {
         return analyzer;
     }
 
+    /**
+     * @return the tokens from the options and the environment
+     */
+    protected static List<String> getTokens(CommandLine cmdLine)
+            throws IOException {
+        List<String> tokens = new ArrayList<>();
+        tokens.addAll(TokenPool.split(cmdLine.getOptionValue(OPTION_TOKEN)));
+        if (cmdLine.hasOption(OPTION_TOKEN_FILE)) {
+            tokens.addAll(TokenPool.read(Paths.get(cmdLine.getOptionValue(OPTION_TOKEN_FILE))));
+        }
+        tokens.addAll(TokenPool.fromEnvironment());
+        return tokens;
+    }
+
+    protected static ResilientGitHubClient createClient(CommandLine cmdLine)
+            throws ParseException {
+        boolean pooled = cmdLine.hasOption(OPTION_POOLED);
+        ResilientGitHubClient client;
+        if (pooled) {
+            PooledGitHubClient.initKeepAlive(PooledGitHubClient.DEFAULT_MAX_CONNECTIONS);
+        }
+        if (!cmdLine.hasOption(OPTION_API)) {
+            client = pooled ? new PooledGitHubClient()
+                    : new ResilientGitHubClient();
+        } else {
+            URL api;
+            try {
+                api = new URL(cmdLine.getOptionValue(OPTION_API));
+            } catch (MalformedURLException e) {
+                throw new ParseException("Invalid API URL: " + e.getMessage());
+            }
+            client = pooled ? new PooledGitHubClient(api.getHost(),
+                    api.getPort(), api.getProtocol())
+                    : new ResilientGitHubClient(api.getHost(), api.getPort(),
+                            api.getProtocol());
+        }
+        if (cmdLine.hasOption(OPTION_CACHE)) {
+            client.setResponseCache(ResponseCache.load(Paths.get(cmdLine.getOptionValue(OPTION_CACHE))));
+        }
+        try {
+            if (cmdLine.hasOption(OPTION_RETRIES)) {
+                client.setMaxRetries(Integer.parseInt(cmdLine.getOptionValue(OPTION_RETRIES)));
+            }
+            if (cmdLine.hasOption(OPTION_HEDGE)) {
+                client.setHedgeDelay(Long.parseLong(cmdLine.getOptionValue(OPTION_HEDGE)));
+            }
+            if (cmdLine.hasOption(OPTION_MAX_REQUESTS)) {
+                client.setMaxRequests(Long.parseLong(cmdLine.getOptionValue(OPTION_MAX_REQUESTS)));
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid number: " + e.getMessage());
+        }
+        return client;
+    }
+
     protected static void printArgs(CommandLine cmdLine) {
         StringBuilder sb = new StringBuilder();
         sb.append("Parameters:");
@@ -157,6 +336,11 @@ public class Main {
         OptionBuilder.isRequired(false);
         OptionBuilder.hasArg();
         options.addOption(OptionBuilder.create("t"));
+        // token file option
+        OptionBuilder.withLongOpt(OPTION_TOKEN_FILE);
+        OptionBuilder.withDescription(OPTION_TOKEN_FILE_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create());
         // exhaustive option
         OptionBuilder.withLongOpt(OPTION_EXHAUSTIVE);
         OptionBuilder.withDescription(OPTION_EXHAUSTIVE_DESC);
@@ -171,6 +355,63 @@ public class Main {
         OptionBuilder.withDescription(OPTION_OUTPUT_DESC);
         OptionBuilder.hasArg();
         options.addOption(OptionBuilder.create("o"));
+        // changes option
+        OptionBuilder.withLongOpt(OPTION_CHANGES);
+        OptionBuilder.withDescription(OPTION_CHANGES_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create("c"));
+        // stats option
+        OptionBuilder.withLongOpt(OPTION_STATS);
+        OptionBuilder.withDescription(OPTION_STATS_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create("s"));
+        // jobs option
+        OptionBuilder.withLongOpt(OPTION_JOBS);
+        OptionBuilder.withDescription(OPTION_JOBS_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create("j"));
+        // memory budget option
+        OptionBuilder.withLongOpt(OPTION_MEMORY);
+        OptionBuilder.withDescription(OPTION_MEMORY_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create("m"));
+        // pooled option
+        OptionBuilder.withLongOpt(OPTION_POOLED);
+        OptionBuilder.withDescription(OPTION_POOLED_DESC);
+        options.addOption(OptionBuilder.create("p"));
+        // retries option
+        OptionBuilder.withLongOpt(OPTION_RETRIES);
+        OptionBuilder.withDescription(OPTION_RETRIES_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create("r"));
+        // hedge option
+        OptionBuilder.withLongOpt(OPTION_HEDGE);
+        OptionBuilder.withDescription(OPTION_HEDGE_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create());
+        // api option
+        OptionBuilder.withLongOpt(OPTION_API);
+        OptionBuilder.withDescription(OPTION_API_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create());
+        // fail fast option
+        OptionBuilder.withLongOpt(OPTION_FAIL_FAST);
+        OptionBuilder.withDescription(OPTION_FAIL_FAST_DESC);
+        options.addOption(OptionBuilder.create("f"));
+        // cache option
+        OptionBuilder.withLongOpt(OPTION_CACHE);
+        OptionBuilder.withDescription(OPTION_CACHE_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create());
+        // plan option
+        OptionBuilder.withLongOpt(OPTION_PLAN);
+        OptionBuilder.withDescription(OPTION_PLAN_DESC);
+        options.addOption(OptionBuilder.create());
+        // max requests option
+        OptionBuilder.withLongOpt(OPTION_MAX_REQUESTS);
+        OptionBuilder.withDescription(OPTION_MAX_REQUESTS_DESC);
+        OptionBuilder.hasArg();
+        options.addOption(OptionBuilder.create());
     }
 
     public static void printHelp() {
@@ -181,6 +422,8 @@ public class Main {
                 options);
         System.out.println("Commands list:");
         System.out.println("\thelp\t\t\tPrint this message.");
+        System.out.println("\tcheck-pr\t\tCheck the authors of a single pull-request in the form 'owner/repo#N' "
+                + "against the Nuxeo developers and the input file.");
         System.out.println("\trepositories\tList of repositories to analyze. "
                 + "In the form: 'somerepo anotherrepo user/userrepo'. "
                 + "If empty or equal to 'all', then all public non-fork Nuxeo repositories are analyzed.");
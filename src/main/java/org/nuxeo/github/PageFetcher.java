@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.IResourceProvider;
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.NoSuchPageException;
+import org.eclipse.egit.github.core.client.PageIterator;
+import org.eclipse.egit.github.core.client.PagedRequest;
+
+/**
+ * Fetches the pages of a listing concurrently. The first page is fetched
+ * alone, its "last" link giving the number of pages; the following pages are
+ * then requested within a sliding window of concurrent requests and
+ * reassembled in order.
+ */
+public class PageFetcher {
+
+    private static final Log log = LogFactory.getLog(PageFetcher.class);
+
+    private final GitHubClient client;
+
+    private int window = UserResolver.DEFAULT_CONCURRENCY;
+
+    private ExecutorService executor;
+
+    public PageFetcher(GitHubClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param window maximum number of pages requested simultaneously for a
+     *            listing; pages are fetched sequentially if lower than 2
+     */
+    public synchronized void setWindow(int window) {
+        this.window = Math.max(1, window);
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(window, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "github-pages");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return all elements of the listing, in the pages order
+     * @see org.eclipse.egit.github.core.service.GitHubService#getAll(PageIterator)
+     */
+    public <V> List<V> getAll(PageIterator<V> iterator) throws IOException {
+        List<V> elements = new ArrayList<>();
+        try {
+            if (!iterator.hasNext()) {
+                return elements;
+            }
+            // Read the original request before the iterator follows the links
+            PagedRequest<V> request = iterator.getRequest();
+            String uri = request.getUri();
+            elements.addAll(iterator.next());
+            int first = iterator.getNextPage();
+            int last = iterator.getLastPage();
+            if (window < 2 || first < 1 || last <= first) {
+                while (iterator.hasNext()) {
+                    elements.addAll(iterator.next());
+                }
+                return elements;
+            }
+            log.debug(String.format("Fetching pages %s to %s of %s", first,
+                    last, uri));
+            Deque<Future<Collection<V>>> pending = new ArrayDeque<>();
+            try {
+                int page = first;
+                while (page <= last && pending.size() < window) {
+                    pending.add(submit(request, uri, page++));
+                }
+                while (!pending.isEmpty()) {
+                    elements.addAll(get(pending.poll()));
+                    if (page <= last) {
+                        pending.add(submit(request, uri, page++));
+                    }
+                }
+            } finally {
+                for (Future<Collection<V>> future : pending) {
+                    future.cancel(true);
+                }
+            }
+        } catch (NoSuchPageException e) {
+            throw e.getCause();
+        }
+        return elements;
+    }
+
+    private <V> Future<Collection<V>> submit(PagedRequest<V> request,
+            String uri, int page) {
+        final PagedRequest<V> pageRequest = new PagedRequest<>(page,
+                request.getPageSize());
+        pageRequest.setUri(uri);
+        pageRequest.setParams(request.getParams());
+        pageRequest.setType(request.getType());
+        pageRequest.setArrayType(request.getArrayType());
+        pageRequest.setResponseContentType(request.getResponseContentType());
+        return getExecutor().submit(new Callable<Collection<V>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Collection<V> call() throws IOException {
+                Object body = client.get(pageRequest).getBody();
+                if (body == null) {
+                    return Collections.emptyList();
+                }
+                if (body instanceof Collection) {
+                    return (Collection<V>) body;
+                }
+                if (body instanceof IResourceProvider) {
+                    return ((IResourceProvider<V>) body).getResources();
+                }
+                return Collections.singletonList((V) body);
+            }
+        });
+    }
+
+    private static <V> Collection<V> get(Future<Collection<V>> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+
+/**
+ * GitHub client using persistent (keep-alive) connections from a bounded pool
+ * and negotiating gzip/deflate compressed responses.
+ * <p>
+ * At most {@link #getMaxConnections()} requests are in flight at once, from
+ * opening the connection to reading the last byte of the response. The JDK
+ * keep-alive cache ("http.keepAlive" and "http.maxConnections" system
+ * properties) only limits idle connections, see
+ * {@link #initKeepAlive(int)}.
+ * <p>
+ * Connections are HTTP/1.1: the egit {@link GitHubClient} is built on
+ * {@link HttpURLConnection}, which has no HTTP/2 support. The
+ * java.net.http client of Java 11 would mean rewriting the request and
+ * response handling of egit.
+ */
+public class PooledGitHubClient extends ResilientGitHubClient {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private int connectTimeout = 10000;
+
+    private int readTimeout = 60000;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private Semaphore connections = new Semaphore(DEFAULT_MAX_CONNECTIONS,
+            true);
+
+    public PooledGitHubClient() {
+        super();
+    }
+
+    /**
+     * @param hostname API host, for instance a GitHub Enterprise or a local
+     *            stub server
+     * @param port ignored if lower than 1
+     * @param scheme "http" or "https"
+     */
+    public PooledGitHubClient(String hostname, int port, String scheme) {
+        super(hostname, port, scheme);
+    }
+
+    /**
+     * The JDK keeps idle connections per destination in a process-wide
+     * keep-alive cache. Its size is read once, so this must be called before
+     * the first connection is opened. An explicit "http.maxConnections"
+     * system property takes precedence.
+     */
+    public static void initKeepAlive(int maxIdleConnections) {
+        System.setProperty("http.keepAlive", "true");
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections",
+                    Integer.toString(maxIdleConnections));
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Must be called before the first request.
+     */
+    public PooledGitHubClient setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections: "
+                    + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+        connections = new Semaphore(maxConnections, true);
+        return this;
+    }
+
+    public PooledGitHubClient setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public PooledGitHubClient setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Hold a connection permit while the request is sent and its response
+     * read (including retried and hedged attempts, each sent separately).
+     */
+    @Override
+    protected GitHubResponse send(GitHubRequest request) throws IOException {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for a connection");
+        }
+        try {
+            return super.send(request);
+        } finally {
+            connections.release();
+        }
+    }
+
+    @Override
+    protected HttpURLConnection configureRequest(HttpURLConnection request) {
+        super.configureRequest(request);
+        request.setRequestProperty(HEADER_ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+        request.setConnectTimeout(connectTimeout);
+        request.setReadTimeout(readTimeout);
+        return request;
+    }
+
+    /**
+     * Transparently decode compressed responses (including error bodies).
+     */
+    @Override
+    protected InputStream getStream(HttpURLConnection request)
+            throws IOException {
+        InputStream stream = super.getStream(request);
+        String encoding = request.getContentEncoding();
+        if (stream == null || encoding == null) {
+            return stream;
+        }
+        switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+        case "gzip":
+        case "x-gzip":
+            return new GZIPInputStream(stream, BUFFER_SIZE);
+        case "deflate":
+            return new InflaterInputStream(stream);
+        default:
+            return stream;
+        }
+    }
+
+}
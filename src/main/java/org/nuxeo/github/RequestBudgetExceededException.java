@@ -0,0 +1,35 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request which would exceed the maximum number of
+ * requests allowed for the run.
+ */
+public class RequestBudgetExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestBudgetExceededException(long maxRequests) {
+        super("Request budget exceeded: " + maxRequests + " requests");
+    }
+
+}
@@ -0,0 +1,616 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.eclipse.egit.github.core.client.RequestException;
+import org.nuxeo.github.jfr.GitHubRequestEvent;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * GitHub client retrying failed GET requests (server errors, abuse detection,
+ * network failures) with a jittered exponential backoff.<br/>
+ * A circuit breaker per endpoint fails fast after repeated failures, until a
+ * cool down delay elapsed. Slow requests can optionally be hedged: a second
+ * identical request is sent after a delay and the first response wins.<br/>
+ * Commits and contributors pages are decoded with {@link LeanJsonDecoder}.
+ * Requests can be shared among several tokens with a {@link TokenPool}. Each
+ * request is recorded as a {@link GitHubRequestEvent} for Java Flight
+ * Recorder. Bootstrap responses can be kept between executions in a
+ * {@link ResponseCache}, and revalidated with conditional requests.
+ */
+public class ResilientGitHubClient extends GitHubClient {
+
+    private static final Log log = LogFactory.getLog(ResilientGitHubClient.class);
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final long BACKOFF_BASE = 1000;
+
+    private static final long BACKOFF_MAX = 60000;
+
+    private static final int CIRCUIT_THRESHOLD = 5;
+
+    private static final long CIRCUIT_COOL_DOWN = 60000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern PAGE_PARAMETER = Pattern.compile("[?&]page=(\\d+)");
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * Delay in milliseconds before hedging a request; disabled if lower than
+     * 1
+     */
+    private long hedgeDelay = 0;
+
+    private ExecutorService hedgeExecutor;
+
+    /**
+     * Maximum number of requests; unlimited if lower than 1
+     */
+    private long maxRequests = 0;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private TokenPool tokenPool;
+
+    /**
+     * Token of the request being sent by the current thread
+     */
+    private final ThreadLocal<TokenPool.Token> currentToken = new ThreadLocal<>();
+
+    /**
+     * Event of the request being sent by the current thread, if recorded
+     */
+    private final ThreadLocal<GitHubRequestEvent> currentEvent = new ThreadLocal<>();
+
+    /**
+     * Counts the bytes read into the request event
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final GitHubRequestEvent event;
+
+        CountingInputStream(InputStream in, GitHubRequestEvent event) {
+            super(in);
+            this.event = event;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                event.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                event.bytes += n;
+            }
+            return n;
+        }
+    }
+
+    private ResponseCache responseCache;
+
+    /**
+     * Response served from the {@link ResponseCache}, with the kept page
+     * links
+     */
+    private static final class CachedResponse extends GitHubResponse {
+        private final String link;
+
+        CachedResponse(HttpURLConnection response, Object body, String link) {
+            super(response, body);
+            this.link = link;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "Link".equalsIgnoreCase(name) ? link
+                    : super.getHeader(name);
+        }
+    }
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private static final class CircuitBreaker {
+        private final String endpoint;
+
+        private int failures = 0;
+
+        private long openUntil = 0;
+
+        CircuitBreaker(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized void acquire() throws CircuitOpenException {
+            if (System.currentTimeMillis() < openUntil) {
+                throw new CircuitOpenException(endpoint, openUntil);
+            }
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+            openUntil = 0;
+        }
+
+        synchronized void onFailure() {
+            // Once half-opened, a single failure opens the circuit again
+            if (++failures >= CIRCUIT_THRESHOLD) {
+                openUntil = System.currentTimeMillis() + CIRCUIT_COOL_DOWN;
+                log.warn(String.format(
+                        "Circuit opened for endpoint %s after %s failures",
+                        endpoint, failures));
+            }
+        }
+    }
+
+    public ResilientGitHubClient() {
+        super();
+    }
+
+    public ResilientGitHubClient(String hostname, int port, String scheme) {
+        super(hostname, port, scheme);
+    }
+
+    public ResilientGitHubClient setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    /**
+     * @param hedgeDelay delay in milliseconds before sending a second request
+     *            if the first one didn't complete; disabled if lower than 1
+     */
+    public synchronized ResilientGitHubClient setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        if (hedgeDelay > 0 && hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "github-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * @param maxRequests maximum number of requests sent, retries included;
+     *            unlimited if lower than 1. Beyond it, requests fail with a
+     *            {@link RequestBudgetExceededException}.
+     */
+    public ResilientGitHubClient setMaxRequests(long maxRequests) {
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    public long getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return the number of requests sent, retries and hedged requests
+     *         included
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Share the requests among the given Personal Access Tokens, the token
+     * with the most remaining requests being used. A request failing on the
+     * rate limit is retried with another token.
+     */
+    public ResilientGitHubClient setTokens(Collection<String> tokens) {
+        tokenPool = new TokenPool(tokens);
+        setOAuth2Token(tokens.iterator().next());
+        log.info(String.format("Using %s tokens", tokenPool.size()));
+        return this;
+    }
+
+    /**
+     * Keep the bootstrap responses in the given cache, revalidating them with
+     * conditional requests
+     */
+    public ResilientGitHubClient setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    @Override
+    protected HttpURLConnection configureRequest(HttpURLConnection request) {
+        super.configureRequest(request);
+        if (tokenPool != null) {
+            TokenPool.Token token = tokenPool.acquire();
+            currentToken.set(token);
+            request.setRequestProperty("Authorization",
+                    "token " + token.getValue());
+        }
+        return request;
+    }
+
+    @Override
+    protected GitHubClient updateRateLimits(HttpURLConnection request) {
+        super.updateRateLimits(request);
+        GitHubRequestEvent event = currentEvent.get();
+        if (event != null) {
+            try {
+                event.status = request.getResponseCode();
+            } catch (IOException e) {
+                // No response
+            }
+        }
+        TokenPool.Token token = currentToken.get();
+        if (token != null) {
+            tokenPool.update(token,
+                    request.getHeaderField("X-RateLimit-Remaining"),
+                    request.getHeaderField("X-RateLimit-Reset"));
+        }
+        return this;
+    }
+
+    /**
+     * Reserve the request within the budget in a single atomic step, so that
+     * concurrent callers cannot exceed it
+     */
+    private void countRequest() throws RequestBudgetExceededException {
+        if (requestCount.incrementAndGet() > maxRequests && maxRequests > 0) {
+            // Not sent
+            requestCount.decrementAndGet();
+            throw new RequestBudgetExceededException(maxRequests);
+        }
+    }
+
+    @Override
+    public GitHubResponse get(GitHubRequest request) throws IOException {
+        String endpoint = getEndpoint(request.getUri());
+        CircuitBreaker breaker = getBreaker(endpoint);
+        int retries = 0;
+        int tokenSwitches = 0;
+        for (int attempt = 0;; attempt++) {
+            breaker.acquire();
+            countRequest();
+            try {
+                GitHubResponse response = hedgeDelay > 0 ? hedgedGet(
+                        request, endpoint, attempt) : recordedGet(request,
+                        endpoint, attempt);
+                breaker.onSuccess();
+                return response;
+            } catch (IOException e) {
+                if (isTokenRateLimited(e)
+                        && tokenSwitches++ < tokenPool.size()) {
+                    // Not an endpoint failure: retry at once on another token
+                    log.warn(String.format("%s on %s: retry with another token",
+                            e.getMessage(), request.getUri()));
+                    continue;
+                }
+                if (!isRetryable(e)) {
+                    // The server answered: the endpoint is healthy
+                    breaker.onSuccess();
+                    throw e;
+                }
+                breaker.onFailure();
+                if (retries >= maxRetries) {
+                    throw e;
+                }
+                long delay = getBackoff(retries++);
+                log.warn(String.format("%s on %s: retry %s/%s in %sms",
+                        e.getMessage(), request.getUri(), retries,
+                        maxRetries, delay));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the request, recorded as a {@link GitHubRequestEvent} if enabled
+     */
+    private GitHubResponse recordedGet(GitHubRequest request, String endpoint,
+            int attempt) throws IOException {
+        GitHubRequestEvent event = new GitHubRequestEvent();
+        if (!event.isEnabled()) {
+            return send(request);
+        }
+        event.endpoint = endpoint;
+        event.uri = request.getUri();
+        event.page = getPage(request);
+        event.attempt = attempt;
+        currentEvent.set(event);
+        event.begin();
+        try {
+            return send(request);
+        } catch (IOException e) {
+            if (e instanceof RequestException) {
+                event.status = ((RequestException) e).getStatus();
+            }
+            event.failure = e.getMessage();
+            throw e;
+        } finally {
+            currentEvent.remove();
+            event.commit();
+        }
+    }
+
+    /**
+     * Send the request, conditionally if its response is kept in the
+     * {@link ResponseCache}. The response body is fully read on return.
+     */
+    protected GitHubResponse send(GitHubRequest request) throws IOException {
+        String uri = request.generateUri();
+        if (responseCache == null || !responseCache.accepts(uri)) {
+            return super.get(request);
+        }
+        String key = baseUri + uri;
+        ResponseCache.Entry cached = responseCache.get(key);
+        HttpURLConnection connection = createGet(uri);
+        if (request.getResponseContentType() != null) {
+            connection.setRequestProperty(HEADER_ACCEPT,
+                    request.getResponseContentType());
+        }
+        if (cached != null) {
+            connection.setRequestProperty("If-None-Match", cached.getEtag());
+        }
+        int code = connection.getResponseCode();
+        updateRateLimits(connection);
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            responseCache.revalidated();
+            return new CachedResponse(connection, getBody(request,
+                    new ByteArrayInputStream(cached.getBody().getBytes(UTF_8))),
+                    cached.getLink());
+        }
+        if (isOk(code)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream stream = getStream(connection)) {
+                byte[] buffer = new byte[8192];
+                for (int n; (n = stream.read(buffer)) != -1;) {
+                    bytes.write(buffer, 0, n);
+                }
+            }
+            Object body = getBody(request,
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            String etag = connection.getHeaderField("ETag");
+            if (etag != null) {
+                responseCache.put(key, etag, connection.getHeaderField("Link"),
+                        new String(bytes.toByteArray(), UTF_8));
+            }
+            return new GitHubResponse(connection, body);
+        }
+        if (isEmpty(code)) {
+            return new GitHubResponse(connection, null);
+        }
+        throw createException(getStream(connection), code,
+                connection.getResponseMessage());
+    }
+
+    /**
+     * @return the page number of a listing request, 0 if not paged
+     */
+    protected static int getPage(GitHubRequest request) {
+        Matcher matcher = PAGE_PARAMETER.matcher(StringUtils.defaultString(request.getUri()));
+        if (matcher.find()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        return request instanceof PagedRequest ? ((PagedRequest<?>) request).getPage()
+                : 0;
+    }
+
+    @Override
+    protected InputStream getStream(HttpURLConnection request)
+            throws IOException {
+        InputStream stream = super.getStream(request);
+        GitHubRequestEvent event = currentEvent.get();
+        if (stream == null || event == null) {
+            return stream;
+        }
+        return new CountingInputStream(stream, event);
+    }
+
+    private GitHubResponse hedgedGet(final GitHubRequest request,
+            final String endpoint, final int attempt) throws IOException {
+        Callable<GitHubResponse> call = new Callable<GitHubResponse>() {
+            @Override
+            public GitHubResponse call() throws IOException {
+                return recordedGet(request, endpoint, attempt);
+            }
+        };
+        CompletionService<GitHubResponse> completion = new ExecutorCompletionService<>(
+                hedgeExecutor);
+        List<Future<GitHubResponse>> futures = new ArrayList<>(2);
+        futures.add(completion.submit(call));
+        try {
+            Future<GitHubResponse> done = completion.poll(hedgeDelay,
+                    TimeUnit.MILLISECONDS);
+            if (done == null) {
+                log.debug("Hedging slow request " + request.getUri());
+                countRequest();
+                futures.add(completion.submit(call));
+                done = completion.take();
+            }
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                if (futures.size() == 1) {
+                    throw e;
+                }
+                // Fallback on the other request
+                return completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<GitHubResponse> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @Override
+    protected Object getBody(GitHubRequest request, InputStream stream)
+            throws IOException {
+        if (LeanJsonDecoder.supports(request.getType())) {
+            return LeanJsonDecoder.decode(request.getType(), stream);
+        }
+        return super.getBody(request, stream);
+    }
+
+    /**
+     * @return true for server errors, abuse detection and network failures
+     */
+    protected boolean isRetryable(IOException e) {
+        if (e instanceof RequestBudgetExceededException
+                || e instanceof CircuitOpenException) {
+            return false;
+        }
+        if (e instanceof RequestException) {
+            int status = ((RequestException) e).getStatus();
+            if (status >= 500 || status == 429) {
+                return true;
+            }
+            String message = StringUtils.lowerCase(e.getMessage());
+            return status == 403
+                    && (StringUtils.contains(message, "abuse")
+                            || StringUtils.contains(message,
+                                    "secondary rate limit") || isTokenExhausted(message));
+        }
+        return !(e.getCause() instanceof JsonParseException);
+    }
+
+    /**
+     * @return true if the request was refused because the rate limit of its
+     *         token is exceeded, while other tokens have remaining requests
+     */
+    private boolean isTokenRateLimited(IOException e) {
+        return e instanceof RequestException
+                && ((RequestException) e).getStatus() == 403
+                && isTokenExhausted(StringUtils.lowerCase(e.getMessage()));
+    }
+
+    /**
+     * @return true if the rate limit of a token is exceeded while other
+     *         tokens have remaining requests
+     */
+    private boolean isTokenExhausted(String message) {
+        return tokenPool != null && tokenPool.size() > 1
+                && StringUtils.contains(message, "rate limit exceeded")
+                && tokenPool.hasRemaining();
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": between half and the full
+     * exponential delay
+     */
+    protected long getBackoff(int attempt) {
+        long delay = Math.min(BACKOFF_MAX, BACKOFF_BASE << Math.min(attempt, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private CircuitBreaker getBreaker(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(endpoint);
+            CircuitBreaker previous = breakers.putIfAbsent(endpoint, breaker);
+            if (previous != null) {
+                breaker = previous;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * @return the resource type of the request URI, such as "repos/commits",
+     *         "users" or "teams"
+     */
+    protected static String getEndpoint(String uri) {
+        String path = StringUtils.substringBefore(uri, "?");
+        if (path.startsWith("/api/v3/")) {
+            path = path.substring("/api/v3".length());
+        }
+        String[] segments = StringUtils.split(path, '/');
+        if (segments.length == 0) {
+            return path;
+        }
+        if ("repos".equals(segments[0])) {
+            return segments.length > 3 ? "repos/" + segments[3] : "repos";
+        } else if ("repositories".equals(segments[0])) {
+            return segments.length > 2 ? "repos/" + segments[2] : "repos";
+        }
+        return segments[0];
+    }
+
+}
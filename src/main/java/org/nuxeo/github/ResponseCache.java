@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.client.GsonUtils;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Responses of the bootstrap requests kept between executions: repositories
+ * listing, single repositories, teams and team members. They are revalidated
+ * with conditional requests ("If-None-Match" on their ETag): an unchanged
+ * resource is answered with a "304 Not Modified" which doesn't count against
+ * the rate limit, and the kept response is used.
+ */
+public class ResponseCache {
+
+    private static final Log log = LogFactory.getLog(ResponseCache.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern CACHED_PATHS = Pattern.compile("(?:/api/v3)?(?:"
+            + "/(?:users|orgs)/[^/?]+/repos" + "|/repos/[^/?]+/[^/?]+"
+            + "|/teams/\\d+(?:/members)?" + ")(?:\\?.*)?");
+
+    private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>() {
+    }.getType();
+
+    /**
+     * A kept response
+     */
+    public static final class Entry {
+        private String etag;
+
+        private String link;
+
+        private String body;
+
+        Entry(String etag, String link, String body) {
+            this.etag = etag;
+            this.link = link;
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the "Link" header, giving the pages of a listing
+         */
+        public String getLink() {
+            return link;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    private final Path file;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger revalidated = new AtomicInteger();
+
+    private final AtomicInteger fetched = new AtomicInteger();
+
+    public ResponseCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the cache saved in the file; empty if missing or unreadable
+     */
+    public static ResponseCache load(Path file) {
+        ResponseCache cache = new ResponseCache(file);
+        if (!Files.isReadable(file)) {
+            return cache;
+        }
+        try {
+            Map<String, Entry> entries = GsonUtils.fromJson(new String(
+                    Files.readAllBytes(file), UTF_8), ENTRIES_TYPE);
+            if (entries != null) {
+                cache.entries.putAll(entries);
+            }
+            log.debug(String.format("Loaded %s cached responses from %s",
+                    cache.entries.size(), file));
+        } catch (IOException | JsonParseException e) {
+            log.warn("Ignored unreadable cache " + file + ": " + e.getMessage());
+        }
+        return cache;
+    }
+
+    /**
+     * @param uri request URI, without the host
+     * @return true if the response to that request is kept
+     */
+    public boolean accepts(String uri) {
+        return uri != null && CACHED_PATHS.matcher(uri).matches();
+    }
+
+    /**
+     * @param key the request URL
+     * @return the kept response, null if none
+     */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Keep a response, replacing the previous one
+     */
+    public void put(String key, String etag, String link, String body) {
+        entries.put(key, new Entry(etag, link, body));
+        fetched.incrementAndGet();
+    }
+
+    /**
+     * Record that the kept response was still valid
+     */
+    public void revalidated() {
+        revalidated.incrementAndGet();
+    }
+
+    /**
+     * Save the responses, replacing the file once written
+     */
+    public void save() throws IOException {
+        if (fetched.get() == 0) {
+            log.debug(String.format("Cache unchanged, %s responses revalidated",
+                    revalidated.get()));
+            return;
+        }
+        Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(),
+                file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmpFile, GsonUtils.getGson().toJson(entries,
+                    ENTRIES_TYPE).getBytes(UTF_8));
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        log.info(String.format(
+                "Saved cache %s: %s responses revalidated, %s fetched", file,
+                revalidated.get(), fetched.get()));
+    }
+
+}
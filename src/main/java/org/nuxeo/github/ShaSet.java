@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compact set of Git commit SHA-1. Hexadecimal SHAs are stored as 20 bytes in
+ * an open addressing table instead of 40 chars String objects. Other values
+ * fall back to a regular set.
+ */
+public class ShaSet {
+
+    private static final int SHA_LENGTH = 20;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private byte[] table;
+
+    private boolean[] used;
+
+    private int capacity;
+
+    private int size = 0;
+
+    private final Set<String> others = new HashSet<>();
+
+    public ShaSet() {
+        this(1024);
+    }
+
+    public ShaSet(int expected) {
+        capacity = Integer.highestOneBit(Math.max(16,
+                (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        table = new byte[capacity * SHA_LENGTH];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * @return true if the SHA was not already in the set
+     */
+    public synchronized boolean add(String sha) {
+        byte[] bytes = parse(sha);
+        if (bytes == null) {
+            return others.add(sha);
+        }
+        if (size + 1 > capacity * LOAD_FACTOR) {
+            resize();
+        }
+        int slot = find(table, used, capacity, bytes);
+        if (used[slot]) {
+            return false;
+        }
+        insert(slot, bytes);
+        return true;
+    }
+
+    public synchronized boolean contains(String sha) {
+        byte[] bytes = parse(sha);
+        if (bytes == null) {
+            return others.contains(sha);
+        }
+        return used[find(table, used, capacity, bytes)];
+    }
+
+    public synchronized int size() {
+        return size + others.size();
+    }
+
+    private void insert(int slot, byte[] bytes) {
+        System.arraycopy(bytes, 0, table, slot * SHA_LENGTH, SHA_LENGTH);
+        used[slot] = true;
+        size++;
+    }
+
+    /**
+     * @return the slot holding the SHA, or the free slot where to insert it
+     */
+    private static int find(byte[] table, boolean[] used, int capacity,
+            byte[] bytes) {
+        // SHA-1 bytes are uniformly distributed: use the first ones as hash
+        int hash = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+                | (bytes[2] & 0xff) << 8 | bytes[3] & 0xff;
+        int mask = capacity - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            if (!used[slot] || equals(table, slot * SHA_LENGTH, bytes)) {
+                return slot;
+            }
+        }
+    }
+
+    private static boolean equals(byte[] table, int offset, byte[] bytes) {
+        for (int i = 0; i < SHA_LENGTH; i++) {
+            if (table[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        int newCapacity = capacity << 1;
+        byte[] newTable = new byte[newCapacity * SHA_LENGTH];
+        boolean[] newUsed = new boolean[newCapacity];
+        byte[] bytes = new byte[SHA_LENGTH];
+        for (int slot = 0; slot < capacity; slot++) {
+            if (used[slot]) {
+                System.arraycopy(table, slot * SHA_LENGTH, bytes, 0,
+                        SHA_LENGTH);
+                int newSlot = find(newTable, newUsed, newCapacity, bytes);
+                System.arraycopy(bytes, 0, newTable, newSlot * SHA_LENGTH,
+                        SHA_LENGTH);
+                newUsed[newSlot] = true;
+            }
+        }
+        table = newTable;
+        used = newUsed;
+        capacity = newCapacity;
+    }
+
+    /**
+     * @return null if not a 40 chars hexadecimal string
+     */
+    private static byte[] parse(String sha) {
+        if (sha == null || sha.length() != SHA_LENGTH * 2) {
+            return null;
+        }
+        byte[] bytes = new byte[SHA_LENGTH];
+        for (int i = 0; i < SHA_LENGTH; i++) {
+            int high = Character.digit(sha.charAt(2 * i), 16);
+            int low = Character.digit(sha.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+}
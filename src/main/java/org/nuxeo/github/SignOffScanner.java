@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import org.eclipse.egit.github.core.CommitUser;
+
+/**
+ * Finds the "Signed-off-by: Name &lt;email&gt;" trailers of commit messages
+ * (Developer Certificate of Origin). As for Git, trailers are only searched in
+ * the last paragraph of the message. Messages are scanned line by line in
+ * place, without regular expressions nor intermediate strings.
+ */
+public class SignOffScanner {
+
+    private static final String TRAILER = "Signed-off-by:";
+
+    private SignOffScanner() {
+    }
+
+    /**
+     * @return the "Signed-off-by" lines of the message trailers, separated
+     *         with '\n'; null if none
+     */
+    public static String extract(String message) {
+        if (message == null) {
+            return null;
+        }
+        StringBuilder sb = null;
+        int length = message.length();
+        int start = lastParagraph(message);
+        while (start < length) {
+            int end = message.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            int from = skipSpaces(message, start, end);
+            if (message.regionMatches(true, from, TRAILER, 0, TRAILER.length())) {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                } else {
+                    sb.append('\n');
+                }
+                sb.append(message, from, trimEnd(message, from, end));
+            }
+            start = end + 1;
+        }
+        return sb == null ? null : sb.toString();
+    }
+
+    /**
+     * @param signOffs "Signed-off-by" lines as returned by
+     *            {@link #extract(String)}, or a full message
+     * @return true if a trailer signs off the author, ignoring case: by
+     *         email, or by name if the trailer has no email
+     */
+    public static boolean isSignedOffBy(String signOffs, CommitUser author) {
+        if (signOffs == null || author == null) {
+            return false;
+        }
+        String email = author.getEmail();
+        String name = author.getName();
+        int length = signOffs.length();
+        int start = lastParagraph(signOffs);
+        while (start < length) {
+            int end = signOffs.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            int from = skipSpaces(signOffs, start, end);
+            if (signOffs.regionMatches(true, from, TRAILER, 0, TRAILER.length())) {
+                from = skipSpaces(signOffs, from + TRAILER.length(), end);
+                int open = signOffs.lastIndexOf('<', end - 1);
+                int close = signOffs.lastIndexOf('>', end - 1);
+                if (open >= from && close > open) {
+                    if (matches(signOffs, open + 1, close, email)) {
+                        return true;
+                    }
+                } else if (matches(signOffs, from, trimEnd(signOffs, from, end),
+                        name)) {
+                    return true;
+                }
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return the start of the last paragraph, trailing blank lines excluded
+     */
+    private static int lastParagraph(String s) {
+        int end = trimEnd(s, 0, s.length());
+        int start = 0;
+        int line = 0;
+        while (line < end) {
+            int next = s.indexOf('\n', line);
+            if (next < 0 || next >= end) {
+                break;
+            }
+            if (skipSpaces(s, line, next) == next) {
+                // Blank line
+                start = next + 1;
+            }
+            line = next + 1;
+        }
+        return start;
+    }
+
+    private static boolean matches(String s, int from, int to, String value) {
+        return value != null && !value.isEmpty() && to - from == value.length()
+                && s.regionMatches(true, from, value, 0, value.length());
+    }
+
+    private static int skipSpaces(String s, int from, int to) {
+        while (from < to && Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(String s, int from, int to) {
+        while (to > from && Character.isWhitespace(s.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Personal Access Tokens sharing the requests, each one with its own rate
+ * limit. Requests use the token with the most remaining requests, as
+ * reported by the "X-RateLimit-*" response headers.
+ */
+public class TokenPool {
+
+    private static final Log log = LogFactory.getLog(TokenPool.class);
+
+    /**
+     * Environment variable listing tokens separated with commas or white
+     * spaces
+     */
+    public static final String ENV_TOKENS = "GITHUB_TOKENS";
+
+    private final List<Token> tokens = new ArrayList<>();
+
+    private boolean exhausted = false;
+
+    /**
+     * Rotates the first token considered, spreading ties
+     */
+    private int cursor = 0;
+
+    public static final class Token {
+        private final String value;
+
+        /**
+         * Estimated remaining requests; unknown until the first response
+         */
+        private int remaining = Integer.MAX_VALUE;
+
+        /**
+         * Rate limit reset time in milliseconds
+         */
+        private long reset = 0;
+
+        Token(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getRemaining() {
+            return remaining;
+        }
+
+        @Override
+        public String toString() {
+            // Never log the token itself
+            return "token ..." + StringUtils.right(value, 4);
+        }
+    }
+
+    /**
+     * @param tokens duplicates are ignored
+     */
+    public TokenPool(Collection<String> tokens) {
+        for (String value : new LinkedHashSet<>(tokens)) {
+            this.tokens.add(new Token(value));
+        }
+        if (this.tokens.isEmpty()) {
+            throw new IllegalArgumentException("No token");
+        }
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * @return the token with the most remaining requests, its remaining
+     *         requests being decremented in anticipation
+     */
+    public synchronized Token acquire() {
+        long now = System.currentTimeMillis();
+        Token best = null;
+        cursor = (cursor + 1) % tokens.size();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get((cursor + i) % tokens.size());
+            if (token.reset > 0 && now >= token.reset) {
+                token.remaining = Integer.MAX_VALUE;
+                token.reset = 0;
+            }
+            if (best == null || token.remaining > best.remaining) {
+                best = token;
+            }
+        }
+        if (best.remaining > 0) {
+            if (best.remaining != Integer.MAX_VALUE) {
+                best.remaining--;
+            }
+            exhausted = false;
+        } else if (!exhausted) {
+            exhausted = true;
+            log.warn(String.format(
+                    "All %s tokens exhausted, next rate limit reset in %ss",
+                    tokens.size(), (getNextReset() - now) / 1000));
+        }
+        return best;
+    }
+
+    private long getNextReset() {
+        long next = Long.MAX_VALUE;
+        for (Token token : tokens) {
+            if (token.reset > 0) {
+                next = Math.min(next, token.reset);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Update the token rate limit from the response headers; older
+     * responses of the same rate limit window can't increase the remaining
+     * requests.
+     *
+     * @param remaining "X-RateLimit-Remaining" header value
+     * @param reset "X-RateLimit-Reset" header value, in seconds
+     */
+    public synchronized void update(Token token, String remaining, String reset) {
+        if (StringUtils.isBlank(remaining)) {
+            return;
+        }
+        try {
+            int value = Integer.parseInt(remaining.trim());
+            long resetMillis = StringUtils.isBlank(reset) ? 0
+                    : Long.parseLong(reset.trim()) * 1000;
+            if (resetMillis != token.reset) {
+                token.reset = resetMillis;
+                token.remaining = value;
+            } else {
+                token.remaining = Math.min(token.remaining, value);
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Invalid rate limit headers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if any token may have remaining requests
+     */
+    public synchronized boolean hasRemaining() {
+        long now = System.currentTimeMillis();
+        for (Token token : tokens) {
+            if (token.remaining > 0 || now >= token.reset) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the tokens separated with commas or white spaces
+     */
+    public static List<String> split(String tokens) {
+        List<String> list = new ArrayList<>();
+        if (tokens != null) {
+            for (String token : tokens.split("[,\\s]+")) {
+                if (!token.isEmpty()) {
+                    list.add(token);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the tokens of the file, one per line; empty lines and lines
+     *         starting with '#' are ignored
+     */
+    public static List<String> read(Path file) throws IOException {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(file, Charset.defaultCharset())) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                tokens.add(line);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * @return the tokens from the {@link #ENV_TOKENS} environment variable
+     */
+    public static List<String> fromEnvironment() {
+        return split(System.getenv(ENV_TOKENS));
+    }
+
+}
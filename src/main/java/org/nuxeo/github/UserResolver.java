@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.service.UserService;
+import org.nuxeo.github.jfr.CacheLookupEvent;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Resolves GitHub users in bulk with a bounded number of concurrent requests.
+ * Resolved users are cached so that successive calls only query unknown
+ * logins.
+ */
+public class UserResolver {
+
+    private static final Log log = LogFactory.getLog(UserResolver.class);
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private final UserService userService;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private final Map<String, User> usersByLogin = new ConcurrentHashMap<>();
+
+    /**
+     * Logins which couldn't be parsed: not requested again
+     */
+    private final Set<String> unresolved = new HashSet<>();
+
+    public UserResolver(UserService userService) {
+        this.userService = userService;
+    }
+
+    /**
+     * @param concurrency maximum number of simultaneous requests
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @return the users found for the given logins, mapped by login. Logins
+     *         which couldn't be resolved are absent, as well as those not
+     *         requested once the request budget is exceeded.
+     * @throws IOException on the first request failure
+     */
+    public Map<String, User> resolve(Collection<String> logins)
+            throws IOException {
+        Map<String, User> users = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String login : new HashSet<>(logins)) {
+            CacheLookupEvent event = CacheLookupEvent.start("users", login);
+            User user = usersByLogin.get(login);
+            event.hit = user != null;
+            event.commit();
+            if (user != null) {
+                users.put(login, user);
+            } else if (!unresolved.contains(login)) {
+                missing.add(login);
+            }
+        }
+        if (missing.isEmpty()) {
+            return users;
+        }
+        log.debug(String.format("Resolving %s users", missing.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                concurrency, missing.size()));
+        try {
+            Map<String, Future<User>> futures = new HashMap<>();
+            for (final String login : missing) {
+                futures.put(login, executor.submit(new Callable<User>() {
+                    @Override
+                    public User call() throws IOException {
+                        return userService.getUser(login);
+                    }
+                }));
+            }
+            RequestBudgetExceededException budgetExceeded = null;
+            for (Map.Entry<String, Future<User>> entry : futures.entrySet()) {
+                User user;
+                try {
+                    user = get(entry.getValue());
+                } catch (RequestBudgetExceededException e) {
+                    // not unresolved: may be requested by a later run
+                    budgetExceeded = e;
+                    continue;
+                }
+                if (user == null) {
+                    unresolved.add(entry.getKey());
+                } else {
+                    usersByLogin.put(entry.getKey(), user);
+                    users.put(entry.getKey(), user);
+                }
+            }
+            if (budgetExceeded != null) {
+                log.warn(budgetExceeded.getMessage()
+                        + ": some users were not resolved");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return users;
+    }
+
+    /**
+     * @return null if the user couldn't be parsed
+     */
+    private User get(Future<User> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                if (cause.getCause() instanceof JsonSyntaxException) {
+                    // ignore
+                    return null;
+                }
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of the analysis, possibly restricted to a repository
+ */
+@Name("org.nuxeo.github.AnalyzerPhase")
+@Label("Analyzer Phase")
+@Category({ "GitHub Admin", "Analyzer" })
+@Description("Phase of the contributors analysis")
+@StackTrace(false)
+public class AnalyzerPhaseEvent extends Event {
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Repository")
+    @Description("Repository name, null if the phase covers all repositories")
+    public String repository;
+
+    /**
+     * @return a started event, to be committed at the end of the phase
+     */
+    public static AnalyzerPhaseEvent start(String phase, String repository) {
+        AnalyzerPhaseEvent event = new AnalyzerPhaseEvent();
+        event.phase = phase;
+        event.repository = repository;
+        event.begin();
+        return event;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A lookup in a cache of GitHub resources
+ */
+@Name("org.nuxeo.github.CacheLookup")
+@Label("Cache Lookup")
+@Category({ "GitHub Admin", "Cache" })
+@Description("Lookup in a cache of GitHub resources")
+@StackTrace(false)
+public class CacheLookupEvent extends Event {
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Hit")
+    public boolean hit;
+
+    @Label("From Disk")
+    @Description("True if the value was read from the disk")
+    public boolean fromDisk;
+
+    @Label("Size")
+    @Description("Number of elements of the value")
+    public int size;
+
+    public static CacheLookupEvent start(String cache, String key) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.cache = cache;
+        event.key = key;
+        event.begin();
+        return event;
+    }
+
+}
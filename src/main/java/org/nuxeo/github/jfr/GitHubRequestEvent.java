@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A GitHub API request, retries and hedged requests being distinct events.
+ * The duration is the request latency, response body parsing included.
+ */
+@Name("org.nuxeo.github.Request")
+@Label("GitHub Request")
+@Category({ "GitHub Admin", "API" })
+@Description("GitHub API request")
+@StackTrace(false)
+public class GitHubRequestEvent extends Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Page")
+    @Description("Page number of a listing, 0 if not paged")
+    public int page;
+
+    @Label("Attempt")
+    @Description("0 for the first attempt, then the retry number")
+    public int attempt;
+
+    @Label("Status")
+    @Description("HTTP status, 0 if no response")
+    public int status;
+
+    @Label("Bytes")
+    @Description("Response body size, as received")
+    @DataAmount
+    public long bytes;
+
+    @Label("Failure")
+    public String failure;
+
+}
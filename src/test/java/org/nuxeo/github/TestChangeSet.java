@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestChangeSet {
+
+    @Test
+    public void testAnonymousNameAndLoginDoNotCollide() {
+        Developer anonymous = new Developer("foo");
+        Developer user = new Developer("foo", "https://api.github.com/users/foo");
+        user.signed = true;
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.addPrevious(anonymous);
+        changeSet.addPrevious(user);
+        changeSet.compare(anonymous);
+        changeSet.compare(user);
+        changeSet.compareMerged(Collections.singletonMap("foo", anonymous));
+        assertTrue(changeSet.getChanges().isEmpty());
+    }
+
+    @Test
+    public void testNewAnonymousLabel() {
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.addPrevious(new Developer("foo", "https://api.github.com/users/foo"));
+        changeSet.compare(new Developer("foo"));
+        assertEquals(1, changeSet.getCount(ChangeSet.Change.NEW));
+        assertEquals("foo", changeSet.getChanges().get(0)[1]);
+    }
+
+}
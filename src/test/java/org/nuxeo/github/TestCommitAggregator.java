@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.egit.github.core.Commit;
+import org.eclipse.egit.github.core.CommitUser;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.User;
+import org.junit.Test;
+
+public class TestCommitAggregator {
+
+    private static final String REPO_URL = "https://api.github.com/repos/nuxeo/nuxeo-common/commits/";
+
+    private static RepositoryCommit commit(String sha, String author,
+            String committer, String message) {
+        Commit commit = new Commit();
+        commit.setAuthor(commitUser(author));
+        commit.setCommitter(commitUser(committer));
+        commit.setMessage(message);
+        RepositoryCommit repositoryCommit = new RepositoryCommit();
+        repositoryCommit.setUrl(REPO_URL + sha);
+        repositoryCommit.setAuthor(new User().setLogin(author));
+        repositoryCommit.setCommitter(new User().setLogin(committer));
+        repositoryCommit.setCommit(commit);
+        return repositoryCommit;
+    }
+
+    private static CommitUser commitUser(String login) {
+        return new CommitUser().setName(login).setEmail(
+                login + "@example.com");
+    }
+
+    private static Developer developer(CommitAggregator.Partial partial,
+            String login) {
+        CommitAggregator.Contribution contribution = partial.getByLogin().get(
+                login);
+        Developer dev = new Developer(login, "https://api.github.com/users/"
+                + login);
+        dev.addCommits(contribution.getCommits());
+        dev.addSignedOffCommits(contribution.getSignedOffCommits());
+        dev.addCommittedCommits(contribution.getCommittedCommits());
+        return dev;
+    }
+
+    @Test
+    public void testCommittedSignedOffPatch() {
+        CommitAggregator.Partial partial = new CommitAggregator().submit(
+                Collections.singletonList(commit("a1", "alice", "bob",
+                        "Fix\n\nSigned-off-by: Alice <alice@example.com>"))).join();
+        Developer alice = developer(partial, "alice");
+        Developer bob = developer(partial, "bob");
+        assertEquals(Collections.singleton(Developer.toHtmlUrl(REPO_URL + "a1")),
+                bob.getCommittedCommits());
+        assertTrue(alice.getCommittedCommits().isEmpty());
+        assertTrue(alice.isSignedOff());
+        assertTrue(bob.isSignedOff());
+        assertFalse(bob.isUnsigned());
+    }
+
+    @Test
+    public void testCommitterOwnUnsignedCommit() {
+        CommitAggregator.Partial partial = new CommitAggregator().submit(
+                Arrays.asList(commit("a1", "alice", "bob",
+                        "Fix\n\nSigned-off-by: Alice <alice@example.com>"),
+                        commit("b1", "bob", "bob", "Unsigned fix"))).join();
+        Developer bob = developer(partial, "bob");
+        assertEquals(2, bob.getCommits().size());
+        assertEquals(1, bob.getCommittedCommits().size());
+        assertFalse(bob.isSignedOff());
+        assertTrue(bob.isUnsigned());
+    }
+
+}
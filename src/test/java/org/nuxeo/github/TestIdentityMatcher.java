@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestIdentityMatcher {
+
+    private static Developer anonymous(String name, String email) {
+        Developer dev = new Developer(name);
+        dev.addEmail(email);
+        return dev;
+    }
+
+    private static Developer user(String login, String name) {
+        Developer dev = new Developer(login, "https://api.github.com/users/"
+                + login);
+        dev.setName(name);
+        return dev;
+    }
+
+    @Test
+    public void testSameKey() {
+        List<IdentityMatcher.Match> matches = new IdentityMatcher(
+                Arrays.asList(user("jdupont", "Jean Dupont"),
+                        anonymous("DUPONT Jean", "jean@example.com"))).getMatches();
+        assertEquals(1, matches.size());
+        assertEquals(1, matches.get(0).getSimilarity(), 0);
+    }
+
+    @Test
+    public void testSimilarKeys() {
+        List<IdentityMatcher.Match> matches = new IdentityMatcher(
+                Arrays.asList(user("amontgomery", "Alexandre Montgomery"),
+                        anonymous("Alexandre Montgommery", "alex@example.com"))).getMatches();
+        assertEquals(1, matches.size());
+        assertTrue(matches.get(0).getSimilarity() < 1);
+    }
+
+    @Test
+    public void testDigitsOnlyDifference() {
+        List<IdentityMatcher.Match> matches = new IdentityMatcher(
+                Arrays.asList(anonymous("Developer 6 1", "d61@example.com"),
+                        anonymous("Developer 66 1", "d661@example.com"),
+                        user("dev9", "Developer 9 2"),
+                        user("dev111", "Developer 111 2"))).getMatches();
+        assertEquals(matches.toString(), 0, matches.size());
+    }
+
+    @Test
+    public void testDigitsWithSharedKey() {
+        // Another key is identical: the digits don't matter
+        List<IdentityMatcher.Match> matches = new IdentityMatcher(
+                Arrays.asList(user("jdupont2", "Jean Dupont"),
+                        anonymous("Jean Dupont", "jdupont@example.com"))).getMatches();
+        assertEquals(1, matches.size());
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.scaling;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.nuxeo.github.Analyzer;
+import org.nuxeo.github.ResilientGitHubClient;
+
+/**
+ * Runs the exhaustive analysis against synthetic organizations of growing
+ * size served by a {@link StubGitHubServer}, and checks budgets on the number
+ * of API calls, the wall time and the peak heap. The wall time must grow
+ * roughly linearly with the organization size, which catches quadratic
+ * regressions.<br/>
+ * Parameters are read from system properties "scaling.*": see
+ * {@link #main(String[])}. Exits with status 1 if a budget is exceeded.
+ */
+public class ScalingSuite {
+
+    private static final Log log = LogFactory.getLog(ScalingSuite.class);
+
+    private static final class Result {
+        final int scale;
+
+        final long requests;
+
+        final long maxRequests;
+
+        final long millis;
+
+        final long peakHeap;
+
+        Result(int scale, long requests, long maxRequests, long millis,
+                long peakHeap) {
+            this.scale = scale;
+            this.requests = requests;
+            this.maxRequests = maxRequests;
+            this.millis = millis;
+            this.peakHeap = peakHeap;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "scale x%s: %s requests (budget %s), %sms, peak heap %sMB",
+                    scale, requests, maxRequests, millis, peakHeap
+                            / (1024 * 1024));
+        }
+    }
+
+    /**
+     * System properties:
+     * <ul>
+     * <li>scaling.repositories (20), scaling.commits per repository (500),
+     * scaling.developers (200), scaling.overlap (0.5), scaling.anonymous ratio
+     * (0.2), scaling.aliases chain length (2), scaling.seed (1): base
+     * organization,</li>
+     * <li>scaling.steps (3): number of runs, the organization size being
+     * doubled at each step,</li>
+     * <li>scaling.maxSeconds (300) and scaling.maxHeapMB (1024): budgets per
+     * run,</li>
+     * <li>scaling.maxTimeRatio (3.0): maximum wall time ratio between two
+     * successive steps.</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException {
+        int steps = Integer.getInteger("scaling.steps", 3);
+        long maxMillis = Long.getLong("scaling.maxSeconds", 300) * 1000;
+        long maxHeap = Long.getLong("scaling.maxHeapMB", 1024) * 1024 * 1024;
+        double maxTimeRatio = Double.parseDouble(System.getProperty(
+                "scaling.maxTimeRatio", "3.0"));
+        List<String> failures = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        for (int step = 0, scale = 1; step < steps; step++, scale *= 2) {
+            Result result = run(createOrganization(scale), scale);
+            log.info(result);
+            results.add(result);
+            if (result.requests > result.maxRequests) {
+                failures.add(result + ": too many requests");
+            }
+            if (result.millis > maxMillis) {
+                failures.add(result + ": too slow");
+            }
+            if (result.peakHeap > maxHeap) {
+                failures.add(result + ": too much heap");
+            }
+            if (step > 0) {
+                // Ignore noise on very short runs
+                long previous = Math.max(1000, results.get(step - 1).millis);
+                if (result.millis > previous * maxTimeRatio) {
+                    failures.add(String.format(
+                            "%s: non linear growth, %.1f times slower than the previous step",
+                            result, (double) result.millis / previous));
+                }
+            }
+        }
+        for (String failure : failures) {
+            log.error(failure);
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    protected static SyntheticOrganization createOrganization(int scale) {
+        return new SyntheticOrganization() //
+        .setRepositories(Integer.getInteger("scaling.repositories", 20) * scale) //
+        .setCommitsPerRepository(Integer.getInteger("scaling.commits", 500)) //
+        .setDevelopers(Integer.getInteger("scaling.developers", 200) * scale) //
+        .setOverlap(Double.parseDouble(System.getProperty("scaling.overlap", "0.5"))) //
+        .setAnonymousRatio(Double.parseDouble(System.getProperty("scaling.anonymous", "0.2"))) //
+        .setAliasChainLength(Integer.getInteger("scaling.aliases", 2)) //
+        .setSeed(Long.getLong("scaling.seed", 1)) //
+        .generate();
+    }
+
+    protected static Result run(SyntheticOrganization organization, int scale)
+            throws IOException {
+        StubGitHubServer server = new StubGitHubServer(organization).start();
+        Path dir = Files.createTempDirectory("github-admin-scaling");
+        try {
+            Analyzer analyzer = new Analyzer(new ResilientGitHubClient(
+                    "127.0.0.1", server.getPort(), "http"));
+            analyzer.setExhaustive(true);
+            analyzer.setInput(dir.resolve("input.csv").toString());
+            analyzer.setOutput(dir.resolve("output.csv").toString());
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.currentTimeMillis();
+            analyzer.setAllNuxeoRepositories();
+            analyzer.analyzeAndPrint();
+            long millis = System.currentTimeMillis() - start;
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+            log.debug("Requests per endpoint: "
+                    + server.getRequestCountByEndpoint());
+            return new Result(scale, server.getRequestCount(),
+                    getMaxRequests(organization), millis, peakHeap);
+        } finally {
+            server.stop();
+            // Output and statistics files
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * @return the number of requests needed: one per page of repositories,
+     *         team members, contributors and commits, plus one per user
+     */
+    protected static long getMaxRequests(SyntheticOrganization organization) {
+        long requests = pages(organization.getRepositoryCount());
+        requests += 1 + pages(organization.getNuxeoDevelopers().size());
+        for (int repo = 0; repo < organization.getRepositoryCount(); repo++) {
+            requests += pages(organization.getContributors(repo).size());
+            requests += pages(organization.getCommitsPerRepository());
+        }
+        requests += organization.getIdentityCount();
+        return requests;
+    }
+
+    private static long pages(int size) {
+        return Math.max(1, (size + PagedRequest.PAGE_SIZE - 1)
+                / PagedRequest.PAGE_SIZE);
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.scaling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.egit.github.core.Team;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.client.GsonUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the GitHub API v3, serving a
+ * {@link SyntheticOrganization} under "/api/v3" with the GitHub paging (Link
+ * headers) and optional gzip compression. Requests are counted per endpoint.
+ */
+public class StubGitHubServer implements HttpHandler {
+
+    private static final Log log = LogFactory.getLog(StubGitHubServer.class);
+
+    public static final String PREFIX = "/api/v3";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_PAGE_SIZE = 30;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final Pattern REPOS_PATTERN = Pattern.compile("/(?:users|orgs)/([^/]+)/repos");
+
+    private static final Pattern REPO_PATTERN = Pattern.compile("/repos/([^/]+)/([^/]+)(/contributors|/commits)?");
+
+    private static final Pattern TEAM_PATTERN = Pattern.compile("/teams/(\\d+)(/members)?");
+
+    private static final Pattern USER_PATTERN = Pattern.compile("/users/([^/]+)");
+
+    private static final Pattern PAGE_PATTERN = Pattern.compile("(^|&)page=\\d+");
+
+    private final SyntheticOrganization organization;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicLong> requestsByEndpoint = new ConcurrentHashMap<>();
+
+    /**
+     * A range of a paged resource
+     */
+    private interface Pager {
+        int size();
+
+        List<?> get(int from, int to);
+    }
+
+    public StubGitHubServer(SyntheticOrganization organization) {
+        this.organization = organization;
+    }
+
+    /**
+     * Start listening on a free local port
+     */
+    public StubGitHubServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PREFIX, this);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        log.debug("Stub GitHub API listening on port " + getPort());
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return request counts sorted by endpoint
+     */
+    public Map<String, Long> getRequestCountByEndpoint() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : requestsByEndpoint.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public void resetRequestCount() {
+        requests.set(0);
+        requestsByEndpoint.clear();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath().substring(
+                    PREFIX.length());
+            requests.incrementAndGet();
+            Matcher matcher;
+            if ((matcher = REPOS_PATTERN.matcher(path)).matches()
+                    && SyntheticOrganization.OWNER.equals(matcher.group(1))) {
+                count("repos");
+                sendPage(exchange, new Pager() {
+                    @Override
+                    public int size() {
+                        return organization.getRepositoryCount();
+                    }
+
+                    @Override
+                    public List<?> get(int from, int to) {
+                        return organization.getRepositories().subList(from,
+                                to);
+                    }
+                });
+            } else if ((matcher = REPO_PATTERN.matcher(path)).matches()
+                    && SyntheticOrganization.OWNER.equals(matcher.group(1))
+                    && organization.getRepositoryIndex(matcher.group(2)) >= 0) {
+                final int repo = organization.getRepositoryIndex(matcher.group(2));
+                String resource = matcher.group(3);
+                if (resource == null) {
+                    count("repository");
+                    send(exchange, 200, organization.getRepository(repo));
+                } else if ("/contributors".equals(resource)) {
+                    count("contributors");
+                    final List<?> contributors = organization.getContributors(repo);
+                    sendPage(exchange, new Pager() {
+                        @Override
+                        public int size() {
+                            return contributors.size();
+                        }
+
+                        @Override
+                        public List<?> get(int from, int to) {
+                            return contributors.subList(from, to);
+                        }
+                    });
+                } else {
+                    count("commits");
+                    sendPage(exchange, new Pager() {
+                        @Override
+                        public int size() {
+                            return organization.getCommitsPerRepository();
+                        }
+
+                        @Override
+                        public List<?> get(int from, int to) {
+                            return organization.getCommits(repo, from, to);
+                        }
+                    });
+                }
+            } else if ((matcher = TEAM_PATTERN.matcher(path)).matches()
+                    && Integer.parseInt(matcher.group(1)) == SyntheticOrganization.DEVELOPERS_TEAM_ID) {
+                count("teams");
+                if (matcher.group(2) == null) {
+                    send(exchange, 200, new Team().setId(
+                            SyntheticOrganization.DEVELOPERS_TEAM_ID).setName(
+                            "Developers"));
+                } else {
+                    final List<User> members = organization.getNuxeoDevelopers();
+                    sendPage(exchange, new Pager() {
+                        @Override
+                        public int size() {
+                            return members.size();
+                        }
+
+                        @Override
+                        public List<?> get(int from, int to) {
+                            return members.subList(from, to);
+                        }
+                    });
+                }
+            } else if ((matcher = USER_PATTERN.matcher(path)).matches()
+                    && organization.getUser(matcher.group(1)) != null) {
+                count("users");
+                send(exchange, 200, organization.getUser(matcher.group(1)));
+            } else {
+                count("unknown");
+                log.warn("Stub GitHub API: unknown resource " + path);
+                send(exchange, 404,
+                        Collections.singletonMap("message", "Not Found"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void count(String endpoint) {
+        AtomicLong count = requestsByEndpoint.get(endpoint);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong previous = requestsByEndpoint.putIfAbsent(endpoint,
+                    count);
+            if (previous != null) {
+                count = previous;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void sendPage(HttpExchange exchange, Pager pager)
+            throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        int page = Math.max(1, getParameter(query, "page", 1));
+        int pageSize = Math.min(MAX_PAGE_SIZE,
+                getParameter(query, "per_page", DEFAULT_PAGE_SIZE));
+        int size = pager.size();
+        int lastPage = Math.max(1, (size + pageSize - 1) / pageSize);
+        int from = Math.min(size, (page - 1) * pageSize);
+        int to = Math.min(size, from + pageSize);
+        if (page < lastPage) {
+            String base = "http://127.0.0.1:" + getPort()
+                    + exchange.getRequestURI().getRawPath() + "?";
+            exchange.getResponseHeaders().add(
+                    "Link",
+                    String.format("<%s>; rel=\"next\", <%s>; rel=\"last\"",
+                            base + withPage(query, page + 1),
+                            base + withPage(query, lastPage)));
+        }
+        send(exchange, 200, pager.get(from, to));
+    }
+
+    private static int getParameter(String query, String name, int defaultValue) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    try {
+                        return Integer.parseInt(parameter.substring(name.length() + 1));
+                    } catch (NumberFormatException e) {
+                        return defaultValue;
+                    }
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String withPage(String query, int page) {
+        if (query == null || query.isEmpty()) {
+            return "page=" + page;
+        }
+        Matcher matcher = PAGE_PATTERN.matcher(query);
+        if (matcher.find()) {
+            return matcher.replaceFirst("$1page=" + page);
+        }
+        return query + "&page=" + page;
+    }
+
+    private void send(HttpExchange exchange, int status, Object body)
+            throws IOException {
+        byte[] bytes = GsonUtils.toJson(body).getBytes(UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst(
+                "Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type",
+                "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
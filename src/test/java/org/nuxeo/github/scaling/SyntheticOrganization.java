@@ -0,0 +1,353 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Julien Carsique
+ *
+ */
+
+package org.nuxeo.github.scaling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.egit.github.core.Commit;
+import org.eclipse.egit.github.core.CommitUser;
+import org.eclipse.egit.github.core.Contributor;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.User;
+
+/**
+ * Deterministic synthetic "nuxeo" organization. Commits are generated on
+ * demand from the seed, so that large organizations don't need to be held in
+ * memory.
+ * <ul>
+ * <li>a shared pool of developers contributes to all repositories, each
+ * repository also has its own developers; the overlap is the probability for
+ * a commit to come from the shared pool,</li>
+ * <li>a ratio of developers have no GitHub login (anonymous),</li>
+ * <li>a ratio of developers with a login are members of the Nuxeo
+ * "Developers" team,</li>
+ * <li>alias chains: each chain root is followed by anonymous variants, each
+ * variant alternately committing with its own email and the email of the
+ * previous link.</li>
+ * </ul>
+ */
+public class SyntheticOrganization {
+
+    public static final String OWNER = "nuxeo";
+
+    public static final int DEVELOPERS_TEAM_ID = 35421;
+
+    private int repositories = 10;
+
+    private int commitsPerRepository = 1000;
+
+    private int developers = 100;
+
+    private double overlap = 0.5;
+
+    private double anonymousRatio = 0.2;
+
+    private double nuxeoRatio = 0.3;
+
+    private int aliasChainLength = 0;
+
+    private long seed = 0;
+
+    private int privateDevelopers;
+
+    private List<Identity> identities;
+
+    private Map<String, Identity> identitiesByLogin;
+
+    /**
+     * Contributions per identity index, per repository
+     */
+    private List<Map<Integer, Integer>> contributions;
+
+    private static final class Identity {
+        final String login;
+
+        final String name;
+
+        final String email;
+
+        /**
+         * Email of the previous link in the alias chain, if any
+         */
+        final String aliasEmail;
+
+        final boolean nuxeo;
+
+        Identity(String login, String name, String email, String aliasEmail,
+                boolean nuxeo) {
+            this.login = login;
+            this.name = name;
+            this.email = email;
+            this.aliasEmail = aliasEmail;
+            this.nuxeo = nuxeo;
+        }
+    }
+
+    public SyntheticOrganization setRepositories(int repositories) {
+        this.repositories = repositories;
+        return this;
+    }
+
+    public SyntheticOrganization setCommitsPerRepository(
+            int commitsPerRepository) {
+        this.commitsPerRepository = commitsPerRepository;
+        return this;
+    }
+
+    /**
+     * @param developers size of the pool shared by all repositories
+     */
+    public SyntheticOrganization setDevelopers(int developers) {
+        this.developers = developers;
+        return this;
+    }
+
+    /**
+     * @param overlap probability for a commit to come from the shared pool
+     */
+    public SyntheticOrganization setOverlap(double overlap) {
+        this.overlap = overlap;
+        return this;
+    }
+
+    public SyntheticOrganization setAnonymousRatio(double anonymousRatio) {
+        this.anonymousRatio = anonymousRatio;
+        return this;
+    }
+
+    public SyntheticOrganization setNuxeoRatio(double nuxeoRatio) {
+        this.nuxeoRatio = nuxeoRatio;
+        return this;
+    }
+
+    /**
+     * @param aliasChainLength number of anonymous variants following each
+     *            chain root; no alias if 0
+     */
+    public SyntheticOrganization setAliasChainLength(int aliasChainLength) {
+        this.aliasChainLength = aliasChainLength;
+        return this;
+    }
+
+    public SyntheticOrganization setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generate the identities and the contributors statistics. Must be called
+     * once the parameters are set.
+     */
+    public SyntheticOrganization generate() {
+        privateDevelopers = Math.max(1, developers / Math.max(1, repositories));
+        int count = developers + repositories * privateDevelopers;
+        identities = new ArrayList<>(count);
+        identitiesByLogin = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Identity identity = createIdentity(i);
+            identities.add(identity);
+            if (identity.login != null) {
+                identitiesByLogin.put(identity.login, identity);
+            }
+        }
+        contributions = new ArrayList<>(repositories);
+        for (int repo = 0; repo < repositories; repo++) {
+            Map<Integer, Integer> counts = new LinkedHashMap<>();
+            for (int i = 0; i < commitsPerRepository; i++) {
+                int author = getAuthor(repo, i);
+                Integer previous = counts.get(author);
+                counts.put(author, previous == null ? 1 : previous + 1);
+            }
+            contributions.add(counts);
+        }
+        return this;
+    }
+
+    private Identity createIdentity(int index) {
+        Random random = new Random(seed * 31 + index);
+        String name = "Developer " + index;
+        String email = "dev" + index + "@example.com";
+        int link = aliasChainLength > 0 ? index % (aliasChainLength + 1) : 0;
+        if (link > 0) {
+            // Anonymous variant of the chain root
+            Identity previous = identities.get(index - 1);
+            String rootName = identities.get(index - link).name;
+            return new Identity(null, rootName + " " + link, email,
+                    previous.email, false);
+        }
+        if (random.nextDouble() < anonymousRatio) {
+            return new Identity(null, name, email, null, false);
+        }
+        boolean nuxeo = random.nextDouble() < nuxeoRatio;
+        if (nuxeo) {
+            email = "dev" + index + "@nuxeo.com";
+        }
+        return new Identity("dev" + index, name, email, null, nuxeo);
+    }
+
+    private int getAuthor(int repo, int commit) {
+        Random random = new Random(seed * 31 + repo * 1000003L + commit);
+        if (random.nextDouble() < overlap) {
+            return random.nextInt(developers);
+        }
+        return developers + repo * privateDevelopers
+                + random.nextInt(privateDevelopers);
+    }
+
+    public int getRepositoryCount() {
+        return repositories;
+    }
+
+    public int getCommitsPerRepository() {
+        return commitsPerRepository;
+    }
+
+    public int getIdentityCount() {
+        return identities.size();
+    }
+
+    public String getRepositoryName(int repo) {
+        return "repo-" + repo;
+    }
+
+    /**
+     * @return the repository index, -1 if unknown
+     */
+    public int getRepositoryIndex(String name) {
+        if (!name.startsWith("repo-")) {
+            return -1;
+        }
+        try {
+            int repo = Integer.parseInt(name.substring("repo-".length()));
+            return repo < repositories ? repo : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public Repository getRepository(int repo) {
+        String name = getRepositoryName(repo);
+        Repository repository = new Repository();
+        repository.setId(repo + 1);
+        repository.setName(name);
+        repository.setOwner(new User().setLogin(OWNER));
+        repository.setHtmlUrl("https://github.com/" + OWNER + "/" + name);
+        repository.setUrl("https://api.github.com/repos/" + OWNER + "/" + name);
+        repository.setPushedAt(new Date(seed * 1000 + repo * 3600000L));
+        return repository;
+    }
+
+    public List<Repository> getRepositories() {
+        List<Repository> list = new ArrayList<>(repositories);
+        for (int repo = 0; repo < repositories; repo++) {
+            list.add(getRepository(repo));
+        }
+        return list;
+    }
+
+    /**
+     * @return the commits in [from, to[, most recent first
+     */
+    public List<RepositoryCommit> getCommits(int repo, int from, int to) {
+        List<RepositoryCommit> commits = new ArrayList<>(Math.max(0, to
+                - from));
+        for (int i = from; i < Math.min(to, commitsPerRepository); i++) {
+            commits.add(getCommit(repo, i));
+        }
+        return commits;
+    }
+
+    private RepositoryCommit getCommit(int repo, int index) {
+        Identity author = identities.get(getAuthor(repo, index));
+        String sha = String.format("%08x%08x%024x", repo, index, seed);
+        String email = author.aliasEmail != null && index % 2 == 0 ? author.aliasEmail
+                : author.email;
+        Date date = new Date(seed * 1000 + index * 60000L);
+        CommitUser commitUser = new CommitUser().setName(author.name).setEmail(
+                email).setDate(date);
+        Commit commit = new Commit().setAuthor(commitUser).setCommitter(
+                commitUser).setMessage("Commit " + index).setSha(sha);
+        RepositoryCommit repositoryCommit = new RepositoryCommit();
+        repositoryCommit.setSha(sha);
+        repositoryCommit.setUrl("https://api.github.com/repos/" + OWNER + "/"
+                + getRepositoryName(repo) + "/commits/" + sha);
+        repositoryCommit.setCommit(commit);
+        if (author.login != null) {
+            User user = new User().setLogin(author.login);
+            repositoryCommit.setAuthor(user);
+            repositoryCommit.setCommitter(user);
+        }
+        return repositoryCommit;
+    }
+
+    /**
+     * @return contributors of the repository, including anonymous ones
+     */
+    public List<Contributor> getContributors(int repo) {
+        List<Contributor> list = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : contributions.get(repo).entrySet()) {
+            Identity identity = identities.get(entry.getKey());
+            Contributor contributor = new Contributor().setContributions(
+                    entry.getValue()).setName(identity.name);
+            if (identity.login == null) {
+                contributor.setType("Anonymous");
+            } else {
+                contributor.setType("User").setLogin(identity.login).setUrl(
+                        "https://api.github.com/users/" + identity.login);
+            }
+            list.add(contributor);
+        }
+        return list;
+    }
+
+    /**
+     * @return null if unknown
+     */
+    public User getUser(String login) {
+        Identity identity = identitiesByLogin.get(login);
+        if (identity == null) {
+            return null;
+        }
+        return new User().setLogin(identity.login).setName(identity.name).setEmail(
+                identity.email).setCompany(identity.nuxeo ? "Nuxeo" : "Example").setUrl(
+                "https://api.github.com/users/" + identity.login);
+    }
+
+    /**
+     * @return members of the Nuxeo "Developers" team
+     */
+    public List<User> getNuxeoDevelopers() {
+        List<User> list = new ArrayList<>();
+        for (Identity identity : identities) {
+            if (identity.nuxeo) {
+                list.add(new User().setLogin(identity.login));
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+}